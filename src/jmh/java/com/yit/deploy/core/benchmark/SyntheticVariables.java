@@ -0,0 +1,120 @@
+package com.yit.deploy.core.benchmark;
+
+import com.yit.deploy.core.function.Closures;
+import com.yit.deploy.core.function.Lambda;
+import com.yit.deploy.core.model.VariableName;
+import com.yit.deploy.core.variables.LayeredVariables;
+import com.yit.deploy.core.variables.SimpleVariables;
+import com.yit.deploy.core.variables.Variables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * build synthetic variable tables shaped like a deploy.config:
+ * a chain of env layers (deep env inheritance) followed by a chain of project layers (project ancestry),
+ * each layer defining scalar, lazy, list and map variables and overriding some variables of its parents.
+ */
+public class SyntheticVariables {
+
+    /**
+     * name of the map variable shared by all layers, every layer adds some fields to it
+     */
+    public static final String SHARED_MAP = "shared";
+
+    private final List<Variables> layers = new ArrayList<>();
+    private final List<VariableName> names = new ArrayList<>();
+
+    /**
+     * @param envDepth the depth of the env inheritance chain
+     * @param projectDepth the depth of the project ancestry chain
+     * @param varsPerLayer how many variables are defined in each layer
+     */
+    public SyntheticVariables(int envDepth, int projectDepth, int varsPerLayer) {
+        for (int i = 0; i < envDepth; i++) {
+            layers.add(createLayer("env" + i, varsPerLayer));
+        }
+        for (int i = 0; i < projectDepth; i++) {
+            layers.add(createLayer("project" + i, varsPerLayer));
+        }
+    }
+
+    private SimpleVariables createLayer(String prefix, int count) {
+        SimpleVariables vars = new SimpleVariables();
+        for (int i = 0; i < count; i++) {
+            String name;
+            switch (i % 5) {
+                case 0:
+                    // overridden in every layer
+                    name = "common" + i;
+                    vars.put(name, prefix + "-" + i);
+                    break;
+                case 1:
+                    name = prefix + "_lazy" + i;
+                    String value = prefix + "-" + i;
+                    vars.put(name, Closures.closure(this, () -> value));
+                    break;
+                case 2:
+                    name = prefix + "_list" + i;
+                    vars.put(name, Arrays.asList(prefix, i, "a", "b"));
+                    break;
+                case 3:
+                    name = prefix + "_map" + i;
+                    vars.put(name, Lambda.asMap("name", prefix, "index", i, "nested", Lambda.asMap("a", 1, "b", 2)));
+                    break;
+                default:
+                    name = SHARED_MAP + "." + prefix + "_" + i;
+                    vars.put(name, i);
+                    break;
+            }
+            names.add(VariableName.parse(name));
+        }
+        return vars;
+    }
+
+    /**
+     * all layers, from the most top parent env to the most concrete project
+     *
+     * @return layers
+     */
+    public List<Variables> getLayers() {
+        return layers;
+    }
+
+    /**
+     * the names of all defined variables, including overridden ones
+     *
+     * @return variable names
+     */
+    public List<VariableName> getNames() {
+        return names;
+    }
+
+    /**
+     * merge all layers into a single variable table
+     *
+     * @return merged variable table
+     */
+    public SimpleVariables flatten() {
+        SimpleVariables vars = new SimpleVariables();
+        for (Variables l : layers) {
+            vars.merge(l);
+        }
+        return vars;
+    }
+
+    /**
+     * stack all layers into a layered variable table, with a writable empty layer on the top
+     *
+     * @return layered variable table
+     */
+    public LayeredVariables layered() {
+        LayeredVariables vars = new LayeredVariables();
+        vars.layer(layers);
+        SimpleVariables writable = new SimpleVariables();
+        vars.layer(writable);
+        vars.setWritable(writable);
+        return vars;
+    }
+}
@@ -0,0 +1,69 @@
+package com.yit.deploy.core.benchmark;
+
+import com.yit.deploy.core.model.VariableName;
+import com.yit.deploy.core.variables.resolvers.SimpleVariableResolver;
+import com.yit.deploy.core.variables.variable.Variable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure variable resolving through a resolver stacked on deep env and project layers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableResolverBenchmark {
+
+    @Param({"4", "8"})
+    public int envDepth;
+
+    @Param({"2", "8"})
+    public int projectDepth;
+
+    @Param({"200"})
+    public int varsPerLayer;
+
+    private SimpleVariableResolver resolver;
+    private String[] names;
+    private Object sharedValue;
+
+    @Setup
+    public void setup() {
+        SyntheticVariables synthetic = new SyntheticVariables(envDepth, projectDepth, varsPerLayer);
+        resolver = new SimpleVariableResolver(synthetic.layered());
+        names = synthetic.getNames().stream()
+            .map(VariableName::toString)
+            .distinct()
+            .toArray(String[]::new);
+        sharedValue = resolver.getVariable(SyntheticVariables.SHARED_MAP);
+    }
+
+    @Benchmark
+    public void getVariable(Blackhole bh) {
+        for (String name : names) {
+            bh.consume(resolver.getVariable(name));
+        }
+    }
+
+    @Benchmark
+    public void concreteVariable(Blackhole bh) {
+        for (String name : names) {
+            bh.consume(resolver.concreteVariable(name));
+        }
+    }
+
+    @Benchmark
+    public Object concreteSharedMap() {
+        return resolver.concreteVariable(SyntheticVariables.SHARED_MAP);
+    }
+
+    @Benchmark
+    public Object concreteObject() {
+        return Variable.concreteObject(sharedValue);
+    }
+}
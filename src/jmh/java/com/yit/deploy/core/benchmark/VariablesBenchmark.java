@@ -0,0 +1,97 @@
+package com.yit.deploy.core.benchmark;
+
+import com.yit.deploy.core.model.VariableName;
+import com.yit.deploy.core.variables.LayeredVariables;
+import com.yit.deploy.core.variables.SimpleVariables;
+import com.yit.deploy.core.variables.variable.Variable;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measure variable lookup and iteration of simple and layered variable tables
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariablesBenchmark {
+
+    @Param({"4", "8"})
+    public int envDepth;
+
+    @Param({"2", "8"})
+    public int projectDepth;
+
+    @Param({"200"})
+    public int varsPerLayer;
+
+    private SimpleVariables flat;
+    private LayeredVariables layered;
+    private VariableName[] names;
+    private VariableName missing;
+    private VariableName shared;
+
+    @Setup
+    public void setup() {
+        SyntheticVariables synthetic = new SyntheticVariables(envDepth, projectDepth, varsPerLayer);
+        flat = synthetic.flatten();
+        layered = synthetic.layered();
+        List<VariableName> list = synthetic.getNames();
+        names = list.toArray(new VariableName[0]);
+        missing = VariableName.parse("not.defined.anywhere");
+        shared = VariableName.parse(SyntheticVariables.SHARED_MAP);
+    }
+
+    @Benchmark
+    public void simpleGetWithInvisible(Blackhole bh) {
+        for (VariableName name : names) {
+            bh.consume(flat.getWithInvisible(name));
+        }
+    }
+
+    @Benchmark
+    public void layeredGetWithInvisible(Blackhole bh) {
+        for (VariableName name : names) {
+            bh.consume(layered.getWithInvisible(name));
+        }
+    }
+
+    @Benchmark
+    public Object layeredGetMissing() {
+        return layered.getWithInvisible(missing);
+    }
+
+    @Benchmark
+    public void layeredFields(Blackhole bh) {
+        for (Iterator<Variable<Object>> iter = layered.fields(shared); iter.hasNext(); ) {
+            bh.consume(iter.next());
+        }
+    }
+
+    @Benchmark
+    public void layeredReverseFields(Blackhole bh) {
+        for (Iterator<Variable<Object>> iter = layered.reverseFields(shared); iter.hasNext(); ) {
+            bh.consume(iter.next());
+        }
+    }
+
+    @Benchmark
+    public void layeredVariables(Blackhole bh) {
+        for (Iterator<Variable> iter = layered.variables(); iter.hasNext(); ) {
+            bh.consume(iter.next());
+        }
+    }
+
+    @Benchmark
+    public void simpleVariables(Blackhole bh) {
+        for (Iterator<Variable> iter = flat.variables(); iter.hasNext(); ) {
+            bh.consume(iter.next());
+        }
+    }
+}
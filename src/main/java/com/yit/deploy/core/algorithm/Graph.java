@@ -7,9 +7,9 @@ import java.util.function.Consumer;
 
 public class Graph<N, A> {
     /**
-     * node name -> node
+     * node name -> node, in the order of adding
      */
-    private final Map<String, Node<N>> nodes = new HashMap<>();
+    private final Map<String, Node<N>> nodes = new LinkedHashMap<>();
     /**
      * start node name -> end node name -> arc data
      */
@@ -147,6 +147,84 @@ public class Graph<N, A> {
         return result;
     }
 
+    /**
+     * partition the nodes into topological levels. the nodes of the first level have no previous nodes,
+     * and each node of the other levels is in the level next to the last level of its previous nodes,
+     * so the nodes of the same level do not depend on each other.
+     * nodes of a level are in the order of adding.
+     *
+     * @return levels of node names
+     * @throws IllegalArgumentException if the graph contains a cycle, which is reported in the message
+     */
+    public List<List<String>> levels() {
+        Map<Node<N>, Integer> inDegrees = new HashMap<>();
+        List<Node<N>> current = new ArrayList<>();
+        for (Node<N> n : nodes.values()) {
+            inDegrees.put(n, n.prev.size());
+            if (n.prev.isEmpty()) {
+                current.add(n);
+            }
+        }
+
+        List<List<String>> levels = new ArrayList<>();
+        int visited = 0;
+        while (!current.isEmpty()) {
+            levels.add(Lambda.map(current, n -> n.name));
+            visited += current.size();
+            List<Node<N>> next = new ArrayList<>();
+            for (Node<N> n : current) {
+                for (Node<N> m : n.next) {
+                    if (inDegrees.merge(m, -1, Integer::sum) == 0) {
+                        next.add(m);
+                    }
+                }
+            }
+            current = next;
+        }
+
+        if (visited < nodes.size()) {
+            throw new IllegalArgumentException("circle find in graph " + String.join(" -> ", findCycle(inDegrees)));
+        }
+        return levels;
+    }
+
+    /**
+     * find a cycle among the nodes not visited by the topological sorting, all of which have unvisited previous nodes
+     */
+    private List<String> findCycle(Map<Node<N>, Integer> inDegrees) {
+        Node<N> node = null;
+        for (Node<N> n : nodes.values()) {
+            if (inDegrees.get(n) > 0) {
+                node = n;
+                break;
+            }
+        }
+
+        // walk backward through unvisited nodes until a node is met twice
+        Map<Node<N>, Integer> path = new LinkedHashMap<>();
+        while (node != null && !path.containsKey(node)) {
+            path.put(node, path.size());
+            Node<N> prev = null;
+            for (Node<N> m : node.prev) {
+                if (inDegrees.get(m) > 0) {
+                    prev = m;
+                    break;
+                }
+            }
+            node = prev;
+        }
+
+        List<String> cycle = new ArrayList<>();
+        if (node != null) {
+            List<Node<N>> walked = new ArrayList<>(path.keySet());
+            for (int i = walked.size() - 1; i >= path.get(node); i--) {
+                cycle.add(walked.get(i).name);
+            }
+            cycle.add(cycle.get(0));
+        }
+        return cycle;
+    }
+
     public Graph reverse() {
         Graph<N, A> g = new Graph<>();
         for (Node<N> n : nodes.values()) {
@@ -0,0 +1,184 @@
+package com.yit.deploy.core.compile;
+
+import com.yit.deploy.core.utils.Utils;
+import groovy.lang.Script;
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded cache of the compiled classes of closure texts, so that the same closure text
+ * appeared in different records, commits, branches and projects is only compiled once.
+ *
+ * each closure text is compiled into a script returning the closure, and each script is defined in its own
+ * class loader, so that the classes of an evicted entry can be unloaded once all its closures are gone.
+ */
+public class ClosureCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final DeployCompiler compiler;
+    private final int capacity;
+
+    /**
+     * normalized closure text -> compiled script, in access order
+     */
+    private final LinkedHashMap<String, Compiled> entries;
+
+    /**
+     * closure class name -> number of live entries using it. the same text compiled again after being evicted
+     * gets the same class names, so the texts of a name are only forgotten once no entry uses it
+     */
+    private final Map<String, Integer> closureClassRefs = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    ClosureCache(DeployCompiler compiler, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.compiler = compiler;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * get the compiled script class which returns the closure, compile it if not cached
+     *
+     * @param text closure text
+     * @return script class
+     */
+    public Class<Script> get(String text) {
+        String key = normalize(text);
+        Compiled compiled;
+        List<Compiled> evicted = null;
+        synchronized (entries) {
+            compiled = entries.get(key);
+            if (compiled == null) {
+                compiled = new Compiled();
+                entries.put(key, compiled);
+                evicted = evict();
+            }
+        }
+        // released outside the lock, since an evicted entry may be still being compiled
+        if (evicted != null) {
+            for (Compiled c : evicted) {
+                c.release();
+            }
+        }
+        return compiled.get(key);
+    }
+
+    /**
+     * drop all compiled closures
+     */
+    public void clear() {
+        List<Compiled> cleared;
+        synchronized (entries) {
+            cleared = new ArrayList<>(entries.values());
+            entries.clear();
+        }
+        for (Compiled compiled : cleared) {
+            compiled.release();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private List<Compiled> evict() {
+        List<Compiled> evicted = null;
+        for (Iterator<Compiled> iter = entries.values().iterator(); entries.size() > capacity && iter.hasNext();) {
+            if (evicted == null) {
+                evicted = new ArrayList<>(1);
+            }
+            evicted.add(iter.next());
+            iter.remove();
+            evictions.incrementAndGet();
+        }
+        return evicted;
+    }
+
+    /**
+     * only the line separators and the leading and trailing blanks are normalized,
+     * since other white spaces may be in string literals
+     */
+    private static String normalize(String text) {
+        return text.replace("\r\n", "\n").trim();
+    }
+
+    private class Compiled {
+        private Class<Script> scriptClass;
+        private Iterable<String> closureClassNames;
+        private boolean released;
+
+        /**
+         * compile the text only once, other threads asking for the same text wait for it
+         */
+        synchronized Class<Script> get(String text) {
+            if (scriptClass != null) {
+                hits.incrementAndGet();
+                return scriptClass;
+            }
+
+            misses.incrementAndGet();
+            String path = "Closure_" + new String(Hex.encodeHex(ScriptCache.sha256().digest(text.getBytes(Utils.DefaultCharset)))) + ".groovy";
+            ScriptCache.Entry entry = compiler.loadOrCompile("return " + text, path);
+            scriptClass = compiler.defineScript(entry, path);
+            if (!released) {
+                closureClassNames = entry.closureTexts.keySet();
+                synchronized (closureClassRefs) {
+                    // recorded again, since a stale entry of the same text may have removed them during the compilation
+                    for (Map.Entry<String, String> e : entry.closureTexts.entrySet()) {
+                        closureClassRefs.merge(e.getKey(), 1, Integer::sum);
+                        compiler.closureRecorder.record(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            return scriptClass;
+        }
+
+        /**
+         * the closure texts of an evicted entry are not needed any more, unless the text is cached again,
+         * closures already created keep their texts in ClosureWrapper
+         */
+        synchronized void release() {
+            released = true;
+            if (closureClassNames == null) {
+                return;
+            }
+            synchronized (closureClassRefs) {
+                for (String name : closureClassNames) {
+                    if (closureClassRefs.merge(name, -1, Integer::sum) <= 0) {
+                        closureClassRefs.remove(name);
+                        compiler.closureRecorder.remove(name);
+                    }
+                }
+            }
+            closureClassNames = null;
+        }
+    }
+}
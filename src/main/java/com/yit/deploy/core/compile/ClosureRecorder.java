@@ -31,6 +31,29 @@ public class ClosureRecorder extends CompilationCustomizer {
         return cache.get(clazz.getName());
     }
 
+    public String getClosureText(String className) {
+        return cache.get(className);
+    }
+
+    /**
+     * register the text of a closure class which is not compiled in this process, such as loaded from the script cache
+     *
+     * @param className closure class name
+     * @param text closure source text
+     */
+    public void record(String className, String text) {
+        cache.put(className, text);
+    }
+
+    /**
+     * forget the text of a closure class, once the class is not used any more
+     *
+     * @param className closure class name
+     */
+    public void remove(String className) {
+        cache.remove(className);
+    }
+
     @Override
     public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) throws CompilationFailedException {
         visitInnerClasses(source, classNode);
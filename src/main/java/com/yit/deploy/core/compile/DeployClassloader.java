@@ -1,5 +1,8 @@
 package com.yit.deploy.core.compile;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class DeployClassloader extends ClassLoader {
 
     /**
@@ -119,4 +122,57 @@ public class DeployClassloader extends ClassLoader {
     private boolean checkIfCharsInWhitelist(String s) {
         return s.indexOf('_') > 0 && s.chars().allMatch(c -> c == '_' || c == '.' || c == '$' || c >= 'A' && c <= 'Z');
     }
+
+    /**
+     * define a group of classes compiled together, such as a script and its closures, in a new child class loader,
+     * so that they can reference each other and be unloaded together
+     *
+     * @param classes class name -> bytecode
+     * @return class name -> defined class
+     */
+    public Map<String, Class<?>> defineClasses(Map<String, byte[]> classes) {
+        ScriptClassLoader loader = new ScriptClassLoader(this, classes);
+        Map<String, Class<?>> defined = new LinkedHashMap<>(classes.size());
+        for (String name : classes.keySet()) {
+            try {
+                defined.put(name, loader.loadClass(name));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("failed to define class " + name, e);
+            }
+        }
+        return defined;
+    }
+
+    private static class ScriptClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        ScriptClassLoader(DeployClassloader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    // classes of the script come first, since a script may have the same name with a class of the parent
+                    c = classes.containsKey(name) ? findClass(name) : getParent().loadClass(name);
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
 }
@@ -4,8 +4,14 @@ import com.yit.deploy.core.function.ClosureWrapper;
 import groovy.lang.Closure;
 import groovy.lang.GroovyShell;
 import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilationUnit;
 import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
 import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import javax.annotation.Nullable;
+import java.util.Map;
 
 public class DeployCompiler {
 
@@ -19,15 +25,99 @@ public class DeployCompiler {
 
     public final ClosureRecorder closureRecorder = new ClosureRecorder();
 
-    private final GroovyShell GROOVY_SHELL = new GroovyShell(
-        DEPLOY_CLASSLOADER,
-        new CompilerConfiguration().addCompilationCustomizers(closureRecorder)
-    );
+    private final CompilerConfiguration compilerConfiguration = new CompilerConfiguration().addCompilationCustomizers(closureRecorder);
+
+    private final GroovyShell GROOVY_SHELL = new GroovyShell(DEPLOY_CLASSLOADER, compilerConfiguration);
+
+    /**
+     * on-disk cache of compiled script classes, null if disabled
+     */
+    private volatile ScriptCache scriptCache = ScriptCache.createDefault(compilerConfiguration);
+
+    private final ClosureCache closureCache = new ClosureCache(this, ClosureCache.DEFAULT_CAPACITY);
 
     public GroovyShell getGroovyShell() {
         return GROOVY_SHELL;
     }
 
+    @Nullable
+    public ScriptCache getScriptCache() {
+        return scriptCache;
+    }
+
+    /**
+     * replace the on-disk cache of compiled script classes
+     *
+     * @param scriptCache the new cache, null to disable caching
+     */
+    public void setScriptCache(@Nullable ScriptCache scriptCache) {
+        this.scriptCache = scriptCache;
+    }
+
+    public CompilerConfiguration getCompilerConfiguration() {
+        return compilerConfiguration;
+    }
+
+    /**
+     * compile the script to a class, the compiled classes are loaded from the script cache if possible
+     *
+     * @param text script text
+     * @param path script path, used as the file name of the script
+     * @return compiled script class
+     */
+    public Class<Script> compileScript(String text, String path) {
+        return defineScript(loadOrCompile(text, path), path);
+    }
+
+    /**
+     * get the compiled classes of the script, from the script cache if possible
+     *
+     * @param text script text
+     * @param path script path
+     * @return compiled classes
+     */
+    ScriptCache.Entry loadOrCompile(String text, String path) {
+        ScriptCache cache = scriptCache;
+        ScriptCache.Entry entry = cache == null ? null : cache.load(path, text);
+        if (entry == null) {
+            entry = compile(text, path);
+            if (cache != null) {
+                cache.save(path, text, entry);
+            }
+        } else {
+            for (Map.Entry<String, String> e : entry.closureTexts.entrySet()) {
+                closureRecorder.record(e.getKey(), e.getValue());
+            }
+        }
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    Class<Script> defineScript(ScriptCache.Entry entry, String path) {
+        Class<?> scriptClass = DEPLOY_CLASSLOADER.defineClasses(entry.classes).get(entry.scriptClassName);
+        if (scriptClass == null || !Script.class.isAssignableFrom(scriptClass)) {
+            throw new IllegalStateException("file " + path + " is not compiled to a script");
+        }
+        return (Class<Script>) scriptClass;
+    }
+
+    private ScriptCache.Entry compile(String text, String path) {
+        CompilationUnit unit = new CompilationUnit(compilerConfiguration, null, GROOVY_SHELL.getClassLoader());
+        unit.addSource(path, text);
+        unit.compile(Phases.CLASS_GENERATION);
+
+        ScriptCache.Entry entry = new ScriptCache.Entry(unit.getFirstClassNode().getName());
+        for (Object o : unit.getClasses()) {
+            GroovyClass gc = (GroovyClass) o;
+            entry.classes.put(gc.getName(), gc.getBytes());
+            String closureText = closureRecorder.getClosureText(gc.getName());
+            if (closureText != null) {
+                entry.closureTexts.put(gc.getName(), closureText);
+            }
+        }
+        return entry;
+    }
+
     public Script parseScript(String text) {
         return GROOVY_SHELL.parse(text);
     }
@@ -36,13 +126,26 @@ public class DeployCompiler {
         return InvokerHelper.createScript(scriptClass, GROOVY_SHELL.getContext());
     }
 
+    public ClosureCache getClosureCache() {
+        return closureCache;
+    }
+
+    /**
+     * create a closure from its text. the closure is compiled only once for the same text,
+     * and a new closure instance is returned for each call.
+     *
+     * @param text closure text
+     * @return the closure
+     */
     public <T> ClosureWrapper<T> parseClosure(String text) {
         if (text == null) {
             return null;
         }
 
+        Script script = createScript(closureCache.get(text));
         //noinspection unchecked
-        Closure<T> closure = (Closure<T>) GROOVY_SHELL.evaluate("return " + text);
-        return new ClosureWrapper<>(closure);
+        Closure<T> closure = (Closure<T>) script.run();
+        // the text is kept by the wrapper, since the recorded text is dropped once evicted from the closure cache
+        return new ClosureWrapper<>(closure, text);
     }
 }
@@ -0,0 +1,274 @@
+package com.yit.deploy.core.compile;
+
+import com.yit.deploy.core.utils.Utils;
+import groovy.lang.GroovySystem;
+import org.apache.commons.codec.binary.Hex;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * on-disk cache of the compiled classes of deploy config scripts.
+ * an entry is keyed by the digest of the script text and path, together with a fingerprint of the compiler,
+ * so that an entry compiled by another groovy version, another set of customizers or another build of this library
+ * is never loaded.
+ */
+public class ScriptCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptCache.class.getName());
+
+    /**
+     * system property to override the cache directory, set to "none" to disable the cache
+     */
+    public static final String DIRECTORY_PROPERTY = "deploy.scriptCacheDir";
+
+    /**
+     * entries not used for such a long time are removed when the cache is opened
+     */
+    private static final long EXPIRE_MILLIS = 30L * 24 * 3600 * 1000;
+
+    private static final int MAGIC = 0x59495443;
+    /**
+     * increase it once the format of the entry file is changed
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".cache";
+
+    private final Path directory;
+    private final String fingerprint;
+
+    public ScriptCache(Path directory, CompilerConfiguration configuration) {
+        this.directory = directory;
+        this.fingerprint = createFingerprint(configuration);
+    }
+
+    /**
+     * create the default cache, located in the directory specified by system property deploy.scriptCacheDir,
+     * or ~/.pipeline-playbook/script-cache if not specified
+     *
+     * @param configuration compiler configuration
+     * @return the cache, or null if it is disabled
+     */
+    @Nullable
+    public static ScriptCache createDefault(CompilerConfiguration configuration) {
+        String dir = System.getProperty(DIRECTORY_PROPERTY);
+        if ("none".equals(dir)) {
+            return null;
+        }
+        Path path = dir == null || dir.isEmpty() ?
+            Paths.get(System.getProperty("user.home"), ".pipeline-playbook", "script-cache") :
+            Paths.get(dir);
+        ScriptCache cache = new ScriptCache(path, configuration);
+        cache.prune();
+        return cache;
+    }
+
+    /**
+     * load the compiled classes of the script
+     *
+     * @param path script path
+     * @param text script text
+     * @return compiled classes, or null if not cached
+     */
+    @Nullable
+    public Entry load(String path, String text) {
+        Path file = getEntryFile(path, text);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("invalid script cache entry");
+            }
+            Entry entry = new Entry(readString(in));
+            for (int i = 0, n = in.readInt(); i < n; i++) {
+                String name = readString(in);
+                entry.classes.put(name, readBytes(in));
+            }
+            for (int i = 0, n = in.readInt(); i < n; i++) {
+                String name = readString(in);
+                entry.closureTexts.put(name, readString(in));
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to load script cache entry of " + path + ", drop it", e);
+            deleteQuietly(file);
+            return null;
+        }
+    }
+
+    /**
+     * save the compiled classes of the script. failures are only logged since the cache is just an optimization.
+     *
+     * @param path script path
+     * @param text script text
+     * @param entry compiled classes
+     */
+    public void save(String path, String text, Entry entry) {
+        Path file = getEntryFile(path, text);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, entry.scriptClassName);
+                out.writeInt(entry.classes.size());
+                for (Map.Entry<String, byte[]> e : entry.classes.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeBytes(out, e.getValue());
+                }
+                out.writeInt(entry.closureTexts.size());
+                for (Map.Entry<String, String> e : entry.closureTexts.entrySet()) {
+                    writeString(out, e.getKey());
+                    writeString(out, e.getValue());
+                }
+            }
+            // concurrent writers produce the same content, so the last one just wins
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to save script cache entry of " + path, e);
+            if (temp != null) {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    /**
+     * remove the entries not used for a long time
+     */
+    public void prune() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        long expire = System.currentTimeMillis() - EXPIRE_MILLIS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if ((name.endsWith(ENTRY_SUFFIX) || name.endsWith(".tmp")) &&
+                    Files.getLastModifiedTime(file).toMillis() < expire) {
+                    deleteQuietly(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to prune script cache in " + directory, e);
+        }
+    }
+
+    private Path getEntryFile(String path, String text) {
+        MessageDigest digest = sha256();
+        digest.update(fingerprint.getBytes(Utils.DefaultCharset));
+        digest.update((byte) 0);
+        digest.update(path.getBytes(Utils.DefaultCharset));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(Utils.DefaultCharset));
+        return directory.resolve(new String(Hex.encodeHex(digest.digest())) + ENTRY_SUFFIX);
+    }
+
+    /**
+     * everything which affects the generated bytecode except the script itself
+     */
+    private static String createFingerprint(CompilerConfiguration configuration) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append('|').append(GroovySystem.getVersion());
+        sb.append('|').append(configuration.getTargetBytecode());
+        sb.append('|').append(configuration.getScriptBaseClass());
+        for (CompilationCustomizer customizer : configuration.getCompilationCustomizers()) {
+            sb.append('|').append(customizer.getClass().getName()).append('@').append(customizer.getPhase());
+        }
+        // base scripts and dsl classes referenced by the scripts are shipped in this library
+        sb.append('|').append(getLibraryVersion());
+        return sb.toString();
+    }
+
+    private static String getLibraryVersion() {
+        CodeSource source = ScriptCache.class.getProtectionDomain().getCodeSource();
+        URL location = source == null ? null : source.getLocation();
+        if (location == null) {
+            return "unknown";
+        }
+        try {
+            File file = new File(location.toURI());
+            return location + "@" + file.lastModified() + "@" + file.length();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return location.toString();
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        // writeUTF is limited to 64K, which is not enough for large closures
+        writeBytes(out, s.getBytes(Utils.DefaultCharset));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), Utils.DefaultCharset);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * the compiled classes of a script
+     */
+    public static class Entry {
+        /**
+         * name of the script class
+         */
+        public final String scriptClassName;
+        /**
+         * class name -> bytecode, including the script class and its closures
+         */
+        public final Map<String, byte[]> classes = new LinkedHashMap<>();
+        /**
+         * closure class name -> closure source text recorded by ClosureRecorder
+         */
+        public final Map<String, String> closureTexts = new LinkedHashMap<>();
+
+        public Entry(String scriptClassName) {
+            this.scriptClassName = scriptClassName;
+        }
+    }
+}
@@ -214,6 +214,8 @@ public class DeployConfig {
 
         Map<String, byte[]> oldFiles = new HashMap<>(other.files), files = new HashMap<>();
         Map<String, Class<Script>> oldScriptClasses = new HashMap<>(other.scriptClasses), scriptClasses = new HashMap<>();
+        // files added, removed or modified since the other deploy config
+        Set<String> changedFiles = new HashSet<>();
 
         for (FilePath f : listAllFilesFromDisk()) {
             String filename = generateFilename(f);
@@ -228,9 +230,17 @@ public class DeployConfig {
                     }
                 } else {
                     files.put(filename, newContent);
+                    changedFiles.add(filename);
                 }
             } else {
                 files.put(filename, IO.readBytes(f));
+                changedFiles.add(filename);
+            }
+        }
+
+        for (String filename : oldFiles.keySet()) {
+            if (!files.containsKey(filename)) {
+                changedFiles.add(filename);
             }
         }
 
@@ -238,7 +248,8 @@ public class DeployConfig {
         this.folders = parseFoldersMap(files.keySet());
         this.scriptClasses = new ConcurrentHashMap<>(scriptClasses);
 
-        this.infoTable = new DeployInfoTable(this);
+        // only re-evaluate the scripts affected by the changed files
+        this.infoTable = new DeployInfoTable(this, other.infoTable, changedFiles);
     }
 
     /**
@@ -298,6 +309,20 @@ public class DeployConfig {
     }
 
     public EnvironmentBaseScript getEnvironmentScript(@Nonnull String envName) {
+        File file = getEnvironmentScriptFile(envName);
+        if (file == null) {
+            throw new IllegalArgumentException("could not find environment " + envName);
+        }
+        return file.getScript(EnvironmentBaseScript.class);
+    }
+
+    /**
+     * get the script file in which the environment is defined
+     * @param envName environment name
+     * @return the script file, or null if not found
+     */
+    @Nullable
+    public File getEnvironmentScriptFile(@Nonnull String envName) {
         String filename = envName.replace('.', PATH_SEPARATOR);
         Folder folder = getEnvsFolder();
         File file = folder.childScript(filename);
@@ -305,16 +330,24 @@ public class DeployConfig {
             // a script file named xxx/_.groovy is regarded as xxx
             file = folder.childScript(filename + PATH_SEPARATOR + UNNAMED_ENV_FILE_NAME);
             if (!file.isExist()) {
-                throw new IllegalArgumentException("could not find environment " + envName);
+                return null;
             }
         }
-        return file.getScript(EnvironmentBaseScript.class);
+        return file;
     }
 
     public PlaybookBaseScript getPlaybookScript(@Nonnull String playbookName) {
-        return getPlaybooksFolder()
-            .childScript(playbookName.replace('.', PATH_SEPARATOR))
-            .getScript(PlaybookBaseScript.class);
+        return getPlaybookScriptFile(playbookName).getScript(PlaybookBaseScript.class);
+    }
+
+    /**
+     * get the script file in which the playbook is defined
+     * @param playbookName playbook name
+     * @return the script file, it may not exist
+     */
+    @Nonnull
+    public File getPlaybookScriptFile(@Nonnull String playbookName) {
+        return getPlaybooksFolder().childScript(playbookName.replace('.', PATH_SEPARATOR));
     }
 
     public Folder getResourceFolder() {
@@ -353,8 +386,7 @@ public class DeployConfig {
             if (content == null) {
                 throw new IllegalArgumentException("invalid script path " + path);
             }
-            Script script = DeployCompiler.getInstance().getGroovyShell().parse(new String(content, Utils.DefaultCharset), path);
-            return (Class<Script>) script.getClass();
+            return DeployCompiler.getInstance().compileScript(new String(content, Utils.DefaultCharset), path);
         });
 
         return (T) InvokerHelper.createScript(scriptClass, DeployCompiler.getInstance().getGroovyShell().getContext());
@@ -6,6 +6,7 @@ import com.yit.deploy.core.exceptions.DeployException;
 import com.yit.deploy.core.info.DeployTableResponse;
 import com.yit.deploy.core.info.DeployInfoTable;
 import com.yit.deploy.core.model.DeployModelTable;
+import com.yit.deploy.core.model.Jobs;
 import com.yit.deploy.core.records.*;
 import com.yit.deploy.core.storage.DeployStorage;
 import com.yit.deploy.core.storage.StorageConfig;
@@ -112,14 +113,14 @@ public class DeployService {
         List<DeployRecordTable> commits = this.deployStorage.getLatestCommits(0, branchName);
 
         DeployInfoTable infoTable = deployConfig.getInfoTable().withRecordTables(commits);
-        return new DeployTableResponse(branchName, new DeployModelTable(deployConfig, infoTable));
+        return new DeployTableResponse(branchName, new DeployModelTable(deployConfig, infoTable, Jobs.DEFAULT_PARALLELISM, true));
     }
 
     public synchronized DeployModelTable getModelTable() {
         DeployInfoTable now = this.getInfoTable();
         if (this.modelTable == null || this.modelTable.getInfoTable() != now) {
             // the this.deployConfig and this.infoTable have been changed by this.getInfoTable()
-            this.modelTable = new DeployModelTable(this.deployConfig, now);
+            this.modelTable = new DeployModelTable(this.deployConfig, now, Jobs.DEFAULT_PARALLELISM, true);
         }
 
         return this.modelTable;
@@ -136,8 +137,8 @@ public class DeployService {
 
         DeployConfig deployConfig =  DeployConfig.getInstance(configProject);
         DeployInfoTable infoTable = deployConfig.getInfoTable().withRecordTables(previous).withRecordTable(delta);
-        // validate the final info table
-        new DeployModelTable(deployConfig, infoTable);
+        // validate the final info table, all jobs must be built
+        new DeployModelTable(deployConfig, infoTable, Jobs.DEFAULT_PARALLELISM);
 
         deployStorage.appendCommitDetail(targetBranch, delta);
     }
@@ -182,6 +183,19 @@ public class DeployService {
             finished, failed, failedType);
     }
 
+    public KeysetPage<BuildRecord> queryBuilds(Long lastSeenId,
+                                               int pageSize,
+                                               String jobName,
+                                               String envName,
+                                               String projectName,
+                                               Boolean finished,
+                                               Boolean failed,
+                                               String failedType,
+                                               CountMode countMode) {
+        return deployStorage.queryBuilds(lastSeenId, pageSize, jobName, envName, projectName,
+            finished, failed, failedType, countMode);
+    }
+
     public String getConfigValue(String envName, String projectName, String namespace, String key, String locker) {
         return deployStorage.getConfigValue(envName, projectName, namespace, key, locker);
     }
@@ -220,9 +220,9 @@ public interface ProjectEvaluationSupport extends VariableResolver {
             if (name.path.length > 1) {
                 String[] path = name.path.clone();
                 path[0] = nextName;
-                newName = new VariableName(path);
+                newName = VariableName.of(path);
             } else {
-                newName = new VariableName(new String[]{nextName});
+                newName = VariableName.of(new String[]{nextName});
             }
 
             for (Project p : ps) {
@@ -1,5 +1,6 @@
 package com.yit.deploy.core.exceptions;
 
+import java.util.Iterator;
 import java.util.Map;
 
 public class ParallelExecutionException extends RuntimeException {
@@ -13,4 +14,35 @@ public class ParallelExecutionException extends RuntimeException {
     public Map<String, Throwable> getBranchErrors() {
         return branchErrors;
     }
+
+    /**
+     * throw the failures of the branches if any. a single failure is thrown as it is (an interruption is wrapped
+     * in ExitException, other checked exceptions in RuntimeException), more failures are thrown together
+     * as a ParallelExecutionException.
+     *
+     * @param branchErrors branch name -> failure of the branch
+     */
+    public static void throwIfFailed(Map<String, Throwable> branchErrors) {
+        if (branchErrors.isEmpty()) {
+            return;
+        }
+        if (branchErrors.size() == 1) {
+            Throwable t = branchErrors.values().iterator().next();
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            // only interruptions abort the build, other failures are still retried by the task
+            throw t instanceof InterruptedException ? new ExitException(t) : new RuntimeException(t);
+        }
+        ParallelExecutionException e = new ParallelExecutionException(branchErrors);
+        Iterator<Throwable> iter = branchErrors.values().iterator();
+        e.initCause(iter.next());
+        while (iter.hasNext()) {
+            e.addSuppressed(iter.next());
+        }
+        throw e;
+    }
 }
@@ -1,17 +1,58 @@
 package com.yit.deploy.core.global.cache;
 
 import com.yit.deploy.core.global.cache.impl.Cache;
+import com.yit.deploy.core.global.cache.impl.CacheStats;
+import com.yit.deploy.core.global.cache.impl.FileCache;
 import com.yit.deploy.core.global.cache.impl.MemoryCache;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.function.Function;
 
 public class HostInfoCache {
+    /**
+     * system property to override the file of persisted host info, set to "none" to keep host info in memory only
+     */
+    public static final String FILE_PROPERTY = "deploy.hostInfoCacheFile";
+
     private static final String CACHE_GROUP = "host-info";
     private static final int SECONDS_TO_LIVE = 24 * 60 * 60;
+    /**
+     * expired host info is still served for such a long time while it is being fetched again
+     */
+    private static final int SECONDS_STALE = 60 * 60;
+    private static final int MAX_SIZE = 10000;
+
+    private static final Cache cache = createCache();
 
-    private static final Cache cache = new MemoryCache();
+    static {
+        cache.setStaleWhileRevalidate(SECONDS_STALE);
+    }
+
+    /**
+     * host info is persisted in the file specified by system property deploy.hostInfoCacheFile,
+     * or ~/.pipeline-playbook/host-info.cache if not specified, so that it survives restarts
+     */
+    private static Cache createCache() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if ("none".equals(file)) {
+            return new MemoryCache(MAX_SIZE);
+        }
+        Path path = file == null || file.isEmpty() ?
+            Paths.get(System.getProperty("user.home"), ".pipeline-playbook", "host-info.cache") :
+            Paths.get(file);
+        return new FileCache(path, CACHE_GROUP::equals, MAX_SIZE);
+    }
 
     public static String get(String host, String type, Function<String, String> fetcher) {
         return cache.get(CACHE_GROUP, host + "/" + type, fetcher, SECONDS_TO_LIVE);
     }
+
+    public static boolean isCached(String host, String type) {
+        return cache.isCached(CACHE_GROUP, host + "/" + type);
+    }
+
+    public static CacheStats getStats() {
+        return cache.getStats(CACHE_GROUP);
+    }
 }
@@ -4,10 +4,9 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -15,8 +14,20 @@ import java.util.logging.Level;
 public abstract class Cache {
     private static Logger logger = Logger.getLogger(Cache.class.getName());
 
+    /**
+     * refresh stale values in background, shared by all caches
+     */
+    private static final ExecutorService REFRESHER = createRefresher();
+
     protected final ScheduledExecutorService scheduler;
 
+    /**
+     * group + key -> the ongoing producer call
+     */
+    private final Map<String, CompletableFuture<CacheItem>> loading = new ConcurrentHashMap<>();
+    private final Map<String, GroupStats> groupStats = new ConcurrentHashMap<>();
+    private volatile long staleMillis;
+
     public Cache() {
         scheduler = Executors.newSingleThreadScheduledExecutor(this::createCleanerThread);
         int interval = getCleanExpiredInterval();
@@ -40,7 +51,8 @@ public abstract class Cache {
             for (String key : listKeys(group)) {
                 try {
                     CacheItem item = fetch(group, key);
-                    if (item != null && checkIfExpired(item, now)) {
+                    // values in the stale window are kept to be refreshed
+                    if (item != null && checkIfExpired(item, now - staleMillis)) {
                         clean(group, key);
                         count++;
                     }
@@ -95,7 +107,20 @@ public abstract class Cache {
     @Nullable
     protected abstract CacheItem fetch(@Nonnull String group, @Nonnull String key) throws Exception;
 
+    /**
+     * get the value of the key in the group, call the producer to populate it if absent or expired.
+     * concurrent gets of the same key share one producer call.
+     * if the value has expired for no longer than the stale window, it is returned at once,
+     * and refreshed in background.
+     *
+     * @param group cache group
+     * @param key cache key
+     * @param producer produce the value of the key
+     * @param secondsToLive seconds the value stays fresh, negative for never expiring
+     * @return cached or produced value
+     */
     public <T> T get(@Nonnull String group, @Nonnull String key, @Nonnull Function<String, T> producer, int secondsToLive) {
+        GroupStats stats = getGroupStats(group);
         CacheItem item;
         try {
             item = fetch(group, key);
@@ -104,41 +129,199 @@ public abstract class Cache {
             item = null;
         }
         long now = new Date().getTime();
-        if (item == null || checkIfExpired(item, now)) {
-            // expired
-            CacheItem newItem = new CacheItem();
-            newItem.group = group;
-            newItem.key = key;
-            newItem.expiredTime = secondsToLive < 0 ? null : now + secondsToLive * 1000;
-            // logger.log(Level.INFO, "populate cache value " + group + "/" + key);
+        if (item != null && !checkIfExpired(item, now)) {
+            stats.hits.increment();
+        } else if (item != null && !checkIfExpired(item, now - staleMillis)) {
+            stats.staleHits.increment();
+            refreshInBackground(group, key, producer, secondsToLive, item);
+        } else {
+            stats.misses.increment();
+            item = load(group, key, producer, secondsToLive, item);
+        }
+
+        @SuppressWarnings("unchecked")
+        T finalValue = (T) item.value;
+        return finalValue;
+    }
+
+    /**
+     * check if the value of the key could be got without waiting for the producer,
+     * expired values in the stale window count as cached since they are returned at once
+     *
+     * @param group cache group
+     * @param key cache key
+     * @return true if cached
+     */
+    public boolean isCached(@Nonnull String group, @Nonnull String key) {
+        CacheItem item;
+        try {
+            item = fetch(group, key);
+        } catch (Exception e) {
+            return false;
+        }
+        return item != null && !checkIfExpired(item, new Date().getTime() - staleMillis);
+    }
+
+    /**
+     * serve expired values for such a long time while they are being refreshed in background, 0 to disable
+     *
+     * @param seconds the stale window
+     */
+    public void setStaleWhileRevalidate(int seconds) {
+        this.staleMillis = seconds * 1000L;
+    }
+
+    /**
+     * @param group cache group
+     * @return statistics of the group since the cache is created
+     */
+    @Nonnull
+    public CacheStats getStats(@Nonnull String group) {
+        GroupStats stats = groupStats.get(group);
+        if (stats == null) {
+            return new CacheStats(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new CacheStats(stats.hits.sum(), stats.staleHits.sum(), stats.misses.sum(), stats.loads.sum(),
+            stats.loadFailures.sum(), TimeUnit.NANOSECONDS.toMillis(stats.loadNanos.sum()), stats.evictions.sum());
+    }
+
+    /**
+     * implementations call it once an item is evicted due to the size limit
+     */
+    protected void recordEviction(@Nonnull String group) {
+        getGroupStats(group).evictions.increment();
+    }
+
+    private GroupStats getGroupStats(String group) {
+        return groupStats.computeIfAbsent(group, g -> new GroupStats());
+    }
+
+    /**
+     * up to 4 threads, which exit once idle for a minute
+     */
+    private static ExecutorService createRefresher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1024), r -> {
+                Thread t = new Thread(r, "cache-refresher");
+                t.setDaemon(true);
+                return t;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private <T> void refreshInBackground(String group, String key, Function<String, T> producer, int secondsToLive, CacheItem old) {
+        // the refreshing is registered before being submitted, so that the stale gets coming before it starts
+        // do not submit it again
+        String loadingKey = getLoadingKey(group, key);
+        CompletableFuture<CacheItem> future = new CompletableFuture<>();
+        if (loading.putIfAbsent(loadingKey, future) != null) {
+            return;
+        }
+        try {
+            REFRESHER.execute(() -> {
+                try {
+                    populate(loadingKey, future, group, key, producer, secondsToLive, old);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "refresh value for cache " + group + "/" + key + " failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // too many refreshing, try again at next getting
+            loading.remove(loadingKey, future);
+            future.complete(old);
+        }
+    }
+
+    /**
+     * call the producer to populate the value, only one call at a time for the same key,
+     * others wait for the result of the ongoing call
+     */
+    private <T> CacheItem load(String group, String key, Function<String, T> producer, int secondsToLive, CacheItem old) {
+        String loadingKey = getLoadingKey(group, key);
+        CompletableFuture<CacheItem> future = new CompletableFuture<>();
+        CompletableFuture<CacheItem> ongoing = loading.putIfAbsent(loadingKey, future);
+        if (ongoing != null) {
             try {
-                newItem.value = producer.apply(key);
-            } catch (Exception e) {
-                if (item == null) {
-                    throw e;
-                } else {
-                    logger.log(Level.SEVERE, "populate new value for cache " + key + " failed. we will use old value for it", e);
-                    newItem.value = item.value;
+                return ongoing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
                 }
+                throw e;
             }
+        }
 
-            try {
-                store(newItem);
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "save new value for cache " + key + " failed. new value will not been seen at next getting.", e);
+        return populate(loadingKey, future, group, key, producer, secondsToLive, old);
+    }
+
+    /**
+     * populate the value for the registered loading future, and complete it with the result
+     */
+    private <T> CacheItem populate(String loadingKey, CompletableFuture<CacheItem> future,
+                                   String group, String key, Function<String, T> producer, int secondsToLive, CacheItem old) {
+        try {
+            CacheItem item = populate(group, key, producer, secondsToLive, old);
+            future.complete(item);
+            return item;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(loadingKey, future);
+        }
+    }
+
+    private <T> CacheItem populate(String group, String key, Function<String, T> producer, int secondsToLive, CacheItem item) {
+        GroupStats stats = getGroupStats(group);
+        long now = new Date().getTime();
+        CacheItem newItem = new CacheItem();
+        newItem.group = group;
+        newItem.key = key;
+        newItem.expiredTime = secondsToLive < 0 ? null : now + secondsToLive * 1000L;
+        // logger.log(Level.INFO, "populate cache value " + group + "/" + key);
+        long start = System.nanoTime();
+        try {
+            newItem.value = producer.apply(key);
+        } catch (Exception e) {
+            stats.loadFailures.increment();
+            if (item == null) {
+                throw e;
+            } else {
+                logger.log(Level.SEVERE, "populate new value for cache " + key + " failed. we will use old value for it", e);
+                newItem.value = item.value;
             }
-            item = newItem;
+        } finally {
+            stats.loads.increment();
+            stats.loadNanos.add(System.nanoTime() - start);
         }
 
-        @SuppressWarnings("unchecked")
-        T finalValue = (T) item.value;
-        return finalValue;
+        try {
+            store(newItem);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "save new value for cache " + key + " failed. new value will not been seen at next getting.", e);
+        }
+        return newItem;
+    }
+
+    private static String getLoadingKey(String group, String key) {
+        return group + "\n" + key;
     }
 
     protected boolean checkIfExpired(CacheItem item, long now) {
         return item.expiredTime != null && item.expiredTime < now;
     }
 
+    private static class GroupStats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder staleHits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder loads = new LongAdder();
+        final LongAdder loadFailures = new LongAdder();
+        final LongAdder loadNanos = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+
     protected static class CacheItem {
         public String group;
         public String key;
@@ -0,0 +1,78 @@
+package com.yit.deploy.core.global.cache.impl;
+
+/**
+ * statistics of a cache group
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long staleHitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long loadFailureCount;
+    private final long totalLoadMillis;
+    private final long evictionCount;
+
+    public CacheStats(long hitCount,
+                      long staleHitCount,
+                      long missCount,
+                      long loadCount,
+                      long loadFailureCount,
+                      long totalLoadMillis,
+                      long evictionCount) {
+        this.hitCount = hitCount;
+        this.staleHitCount = staleHitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadMillis = totalLoadMillis;
+        this.evictionCount = evictionCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of expired values returned while they are being refreshed in background
+     */
+    public long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    /**
+     * @return number of gets which had to wait for the value to be loaded
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of producer calls, concurrent misses of the same key share one call
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long getAverageLoadMillis() {
+        return loadCount == 0 ? 0 : totalLoadMillis / loadCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public double getHitRate() {
+        long total = hitCount + staleHitCount + missCount;
+        return total == 0 ? 0 : (double) (hitCount + staleHitCount) / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits %d, stale hits %d, misses %d, loads %d (failed %d, avg %dms), evictions %d",
+            hitCount, staleHitCount, missCount, loadCount, loadFailureCount, getAverageLoadMillis(), evictionCount);
+    }
+}
@@ -0,0 +1,266 @@
+package com.yit.deploy.core.global.cache.impl;
+
+import com.yit.deploy.core.utils.Utils;
+
+import javax.annotation.Nonnull;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * memory cache whose items of the selected groups are also written to an append-only file,
+ * so that they survive restarts of the process.
+ * every store or clean appends a record to the file, and the file is rewritten with only the live items
+ * once the appended records outnumber the ones written at the last compaction.
+ * only string values are persisted.
+ */
+public class FileCache extends MemoryCache {
+
+    private static final Logger LOGGER = Logger.getLogger(FileCache.class.getName());
+
+    private static final int MAGIC = 0x59434143;
+    /**
+     * increase it once the format of the file is changed
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final byte OP_STORE = 1;
+    private static final byte OP_CLEAN = 2;
+
+    /**
+     * the file is not compacted until such number of records are appended after the last compaction
+     */
+    private static final int MIN_APPENDED_TO_COMPACT = 1000;
+
+    private final Path file;
+    private final Predicate<String> persistentGroups;
+
+    /**
+     * opened lazily, null if not opened yet or failed to write
+     */
+    private DataOutputStream out;
+    /**
+     * number of records written at the last compaction, and appended after it
+     */
+    private int compactedRecords;
+    private int appendedRecords;
+
+    /**
+     * @param file the file to store the items
+     * @param persistentGroups groups whose items are persisted, items of other groups are kept in memory only
+     * @param maxSize max number of items in memory, 0 for unlimited
+     */
+    public FileCache(@Nonnull Path file, @Nonnull Predicate<String> persistentGroups, int maxSize) {
+        super(maxSize);
+        this.file = file;
+        this.persistentGroups = persistentGroups;
+        load();
+    }
+
+    /**
+     * store a cache item to cache media
+     *
+     * @param item the item to store
+     */
+    @Override
+    protected void store(@Nonnull CacheItem item) {
+        super.store(item);
+        if (!persistentGroups.test(item.group)) {
+            return;
+        }
+        if (item.value != null && !(item.value instanceof String)) {
+            throw new IllegalArgumentException("only string values could be persisted, but the value of " +
+                item.group + "/" + item.key + " is " + item.value.getClass().getName());
+        }
+        synchronized (this) {
+            append(OP_STORE, item);
+        }
+    }
+
+    /**
+     * remove a cache item by the specific group / key.
+     *
+     * @param group group of the item
+     * @param key   key of the item
+     */
+    @Override
+    protected void clean(@Nonnull String group, @Nonnull String key) {
+        super.clean(group, key);
+        if (!persistentGroups.test(group)) {
+            return;
+        }
+        CacheItem item = new CacheItem();
+        item.group = group;
+        item.key = key;
+        synchronized (this) {
+            append(OP_CLEAN, item);
+        }
+    }
+
+    @Override
+    protected void cleanExpiredCacheItems() {
+        super.cleanExpiredCacheItems();
+        synchronized (this) {
+            if (appendedRecords > 0) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * read the items from the file, broken records at the end (such as the ones partially written on crash)
+     * are dropped
+     */
+    private synchronized void load() {
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("invalid cache file");
+            }
+            while (true) {
+                int op = in.read();
+                if (op < 0) {
+                    break;
+                }
+                CacheItem item = readItem(in, op == OP_STORE);
+                if (op == OP_STORE) {
+                    super.store(item);
+                } else if (op == OP_CLEAN) {
+                    super.clean(item.group, item.key);
+                } else {
+                    throw new IOException("invalid record type " + op);
+                }
+                records++;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to read cache file " + file + " after " + records + " records", e);
+        }
+
+        // rewrite the file to drop the obsolete and broken records
+        compact();
+        LOGGER.info(compactedRecords + " cache items are loaded from " + file);
+    }
+
+    /**
+     * rewrite the file with only the live items of the persistent groups
+     */
+    private void compact() {
+        closeQuietly();
+        Path temp = null;
+        int count = 0;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(), "cache", ".tmp");
+            try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                o.writeInt(MAGIC);
+                o.writeInt(FORMAT_VERSION);
+                for (String group : listGroups()) {
+                    if (!persistentGroups.test(group)) {
+                        continue;
+                    }
+                    for (String key : listKeys(group)) {
+                        CacheItem item = fetch(group, key);
+                        if (item != null && (item.value == null || item.value instanceof String)) {
+                            writeItem(o, OP_STORE, item);
+                            count++;
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            compactedRecords = count;
+            appendedRecords = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "failed to compact cache file " + file, e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void append(byte op, CacheItem item) {
+        try {
+            if (out == null) {
+                if (!Files.isRegularFile(file)) {
+                    compact();
+                }
+                out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+            }
+            writeItem(out, op, item);
+            out.flush();
+        } catch (IOException e) {
+            closeQuietly();
+            LOGGER.log(Level.WARNING, "failed to write cache item " + item.group + "/" + item.key + " to " + file, e);
+            return;
+        }
+
+        // most appended records replace or remove an older one, so compact once they outnumber the compacted ones
+        appendedRecords++;
+        if (appendedRecords >= MIN_APPENDED_TO_COMPACT && appendedRecords > compactedRecords) {
+            compact();
+        }
+    }
+
+    private void closeQuietly() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            out = null;
+        }
+    }
+
+    private static void writeItem(DataOutputStream o, byte op, CacheItem item) throws IOException {
+        o.writeByte(op);
+        writeString(o, item.group);
+        writeString(o, item.key);
+        if (op == OP_STORE) {
+            o.writeLong(item.expiredTime == null ? -1 : item.expiredTime);
+            o.writeBoolean(item.value != null);
+            if (item.value != null) {
+                writeString(o, (String) item.value);
+            }
+        }
+    }
+
+    private static CacheItem readItem(DataInputStream in, boolean withValue) throws IOException {
+        CacheItem item = new CacheItem();
+        item.group = readString(in);
+        item.key = readString(in);
+        if (withValue) {
+            long expiredTime = in.readLong();
+            item.expiredTime = expiredTime < 0 ? null : expiredTime;
+            item.value = in.readBoolean() ? readString(in) : null;
+        }
+        return item;
+    }
+
+    private static void writeString(DataOutputStream o, String s) throws IOException {
+        byte[] bytes = s.getBytes(Utils.DefaultCharset);
+        o.writeInt(bytes.length);
+        o.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, Utils.DefaultCharset);
+    }
+}
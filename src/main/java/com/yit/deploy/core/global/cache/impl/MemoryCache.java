@@ -2,9 +2,13 @@ package com.yit.deploy.core.global.cache.impl;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class MemoryCache extends Cache {
@@ -14,6 +18,32 @@ public class MemoryCache extends Cache {
      */
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, CacheItem>> data = new ConcurrentHashMap<>();
 
+    /**
+     * max number of items of all groups, 0 for unlimited
+     */
+    private final int maxSize;
+
+    /**
+     * group + key -> item, in access order, used to evict the least recently used items. null if unlimited
+     */
+    private final LinkedHashMap<String, CacheItem> accessOrder;
+
+    public MemoryCache() {
+        this(0);
+    }
+
+    /**
+     * @param maxSize max number of items of all groups, the least recently used items are evicted beyond it,
+     *                0 for unlimited
+     */
+    public MemoryCache(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize");
+        }
+        this.maxSize = maxSize;
+        this.accessOrder = maxSize == 0 ? null : new LinkedHashMap<>(16, 0.75f, true);
+    }
+
     /**
      * list stored group names
      */
@@ -43,6 +73,25 @@ public class MemoryCache extends Cache {
     @Override
     protected void store(@Nonnull CacheItem item) {
         data.computeIfAbsent(item.group, x -> new ConcurrentHashMap<>()).put(item.key, item);
+        if (accessOrder == null) {
+            return;
+        }
+
+        List<CacheItem> evicted = new ArrayList<>();
+        synchronized (accessOrder) {
+            accessOrder.put(getAccessKey(item.group, item.key), item);
+            Iterator<CacheItem> iter = accessOrder.values().iterator();
+            while (accessOrder.size() > maxSize && iter.hasNext()) {
+                evicted.add(iter.next());
+                iter.remove();
+            }
+        }
+        for (CacheItem e : evicted) {
+            ConcurrentHashMap<String, CacheItem> map = data.get(e.group);
+            if (map != null && map.remove(e.key, e)) {
+                recordEviction(e.group);
+            }
+        }
     }
 
     /**
@@ -56,6 +105,11 @@ public class MemoryCache extends Cache {
         ConcurrentHashMap<String, CacheItem> map = data.get(group);
         if (map == null) return;
         map.remove(key);
+        if (accessOrder != null) {
+            synchronized (accessOrder) {
+                accessOrder.remove(getAccessKey(group, key));
+            }
+        }
     }
 
     /**
@@ -70,6 +124,27 @@ public class MemoryCache extends Cache {
     protected CacheItem fetch(@Nonnull String group, @Nonnull String key) {
         ConcurrentHashMap<String, CacheItem> map = data.get(group);
         if (map == null) return null;
-        return map.get(key);
+        CacheItem item = map.get(key);
+        if (item != null && accessOrder != null) {
+            synchronized (accessOrder) {
+                accessOrder.get(getAccessKey(group, key));
+            }
+        }
+        return item;
+    }
+
+    /**
+     * @return number of items of all groups
+     */
+    public int size() {
+        int size = 0;
+        for (Map<String, CacheItem> map : data.values()) {
+            size += map.size();
+        }
+        return size;
+    }
+
+    private static String getAccessKey(String group, String key) {
+        return group + "\n" + key;
     }
 }
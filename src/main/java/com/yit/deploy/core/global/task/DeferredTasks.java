@@ -3,28 +3,71 @@ package com.yit.deploy.core.global.task;
 import com.yit.deploy.core.function.Action;
 
 import javax.annotation.Nonnull;
-import java.util.Date;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * execute tasks after a delay, such as removing containers and temp files.
+ *
+ * a dispatcher thread takes the due tasks from a delay queue and hands them to a fixed number of workers,
+ * so a slow task does not hold up the others. a task running for too long is interrupted,
+ * and a failed task is retried with exponentially increasing delays.
+ */
 public class DeferredTasks {
 
+    private static final Logger LOGGER = Logger.getLogger(DeferredTasks.class.getName());
+
+    public static final int DEFAULT_WORKERS = 4;
+    public static final long DEFAULT_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * the min delay before the first retry, and the max delay between retries
+     */
+    private static final long MIN_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(10);
+
     private static DeferredTasks instance = new DeferredTasks();
 
     public static DeferredTasks getInstance() {
         return instance;
     }
 
-    private static final Logger LOGGER = Logger.getLogger(DeferredTasks.class.getName());
+    private final DelayQueue<DeferredTask> queue = new DelayQueue<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService watchdog;
+    /**
+     * permits of idle workers, the dispatcher only takes a task when a worker is idle
+     */
+    private final Semaphore idleWorkers;
+    private final Thread dispatcher;
+    private final AtomicBoolean shutdown = new AtomicBoolean();
 
-    private DelayQueue<DeferredTask> queue = new DelayQueue<>();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+    private final AtomicLong totalRunMillis = new AtomicLong();
 
     public DeferredTasks() {
-        Executors.newSingleThreadExecutor().submit(this::process);
+        this(DEFAULT_WORKERS);
+    }
+
+    public DeferredTasks(int workers) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("workers must be positive");
+        }
+        this.idleWorkers = new Semaphore(workers);
+        this.workers = Executors.newFixedThreadPool(workers, daemonThreadFactory("deferred-task-worker"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("deferred-task-watchdog"));
+        this.dispatcher = daemonThreadFactory("deferred-task-dispatcher").newThread(this::process);
+        this.dispatcher.start();
     }
 
     public DeferredTasks submit(long delay, @Nonnull Action action) {
@@ -32,49 +75,229 @@ public class DeferredTasks {
     }
 
     public DeferredTasks submit(long delay, @Nonnull Action action, int retries) {
-        queue.put(new DeferredTask(delay, action, retries));
+        return submit(delay, action, retries, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * submit a task
+     *
+     * @param delay milliseconds to wait before executing the task
+     * @param action the task
+     * @param retries max number of retries if the task fails
+     * @param timeout milliseconds the task is allowed to run before it is interrupted, 0 for no timeout
+     * @return this
+     */
+    public DeferredTasks submit(long delay, @Nonnull Action action, int retries, long timeout) {
+        if (shutdown.get()) {
+            throw new IllegalStateException("deferred tasks have been shut down");
+        }
+        submittedCount.incrementAndGet();
+        queue.put(new DeferredTask(delay, action, retries, timeout, 0));
         return this;
     }
 
+    /**
+     * stop taking tasks, and wait for the running tasks to finish.
+     * tasks not due yet are dropped.
+     *
+     * @param timeout max milliseconds to wait for the running tasks
+     * @return true if all running tasks finished in time
+     */
+    public boolean shutdown(long timeout) throws InterruptedException {
+        if (!shutdown.compareAndSet(false, true)) {
+            return workers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        }
+        dispatcher.interrupt();
+        workers.shutdown();
+        boolean finished = workers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        watchdog.shutdownNow();
+        int dropped = queue.size();
+        queue.clear();
+        LOGGER.info("deferred tasks shut down, " + dropped + " pending tasks dropped" +
+            (finished ? "" : ", some running tasks are not finished yet"));
+        return finished;
+    }
+
     private void process() {
         LOGGER.info("start deferred tasks");
-        while (true) {
-            DeferredTask task = queue.poll();
-            if (task == null) {
+        while (!shutdown.get()) {
+            DeferredTask task;
+            try {
+                idleWorkers.acquire();
                 try {
-                    Thread.sleep(1000);
+                    task = queue.take();
                 } catch (InterruptedException e) {
-                    break;
+                    idleWorkers.release();
+                    throw e;
                 }
-
-                continue;
+            } catch (InterruptedException e) {
+                break;
             }
 
             try {
-                task.action.run();
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, "failed to execute deferred task" + ( task.retries > 0 ? ". retrying..." : "."), e);
-                if (task.retries > 0) {
-                    submit(task.delay, task.action, task.retries - 1);
-                }
+                workers.execute(() -> execute(task));
+            } catch (RejectedExecutionException e) {
+                idleWorkers.release();
+                LOGGER.warning("deferred task is dropped since the workers are shut down");
+                break;
             }
         }
         LOGGER.info("exit deferred tasks");
     }
 
-    private static class DeferredTask implements Delayed {
-        private long delay;
-        private long expire;
-        private Action action;
-        private int retries = 0;
+    private void execute(DeferredTask task) {
+        long start = System.currentTimeMillis();
+        totalLatencyMillis.addAndGet(Math.max(0, start - task.expire));
+        runningCount.incrementAndGet();
+
+        Thread thread = Thread.currentThread();
+        ScheduledFuture<?> timer = null;
+        if (task.timeout > 0) {
+            try {
+                timer = watchdog.schedule(() -> task.interrupt(thread), task.timeout, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down, just run it without timeout
+            }
+        }
+
+        try {
+            task.action.run();
+            completedCount.incrementAndGet();
+        } catch (Exception e) {
+            failed(task, e);
+        } finally {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            task.finish();
+            // clear the interruption of the timeout, the worker thread is reused
+            Thread.interrupted();
+            totalRunMillis.addAndGet(System.currentTimeMillis() - start);
+            runningCount.decrementAndGet();
+            idleWorkers.release();
+        }
+    }
+
+    private void failed(DeferredTask task, Exception e) {
+        failedCount.incrementAndGet();
+        boolean retry = task.retries > 0 && !shutdown.get();
+        String reason = task.timedOut ? "timeout after " + task.timeout + "ms" : "failed";
+        LOGGER.log(Level.WARNING, "deferred task " + reason + (retry ? ", retrying..." : "."), e);
+        if (retry) {
+            retriedCount.incrementAndGet();
+            queue.put(new DeferredTask(task.baseDelay, task.action, task.retries - 1, task.timeout, task.attempt + 1));
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for their time or an idle worker
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getRunningCount() {
+        return runningCount.get();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return number of failed executions, including the ones retried later
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
 
-        public DeferredTask(long delay, Action action, int retries) {
-            this.delay = delay;
+    /**
+     * @return average milliseconds between the time a task is due and the time it starts
+     */
+    public long getAverageLatencyMillis() {
+        long executed = completedCount.get() + failedCount.get();
+        return executed == 0 ? 0 : totalLatencyMillis.get() / executed;
+    }
+
+    public long getAverageRunMillis() {
+        long executed = completedCount.get() + failedCount.get();
+        return executed == 0 ? 0 : totalRunMillis.get() / executed;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger no = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + no.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private class DeferredTask implements Delayed {
+        /**
+         * the delay of the first execution, retry delays are computed from it
+         */
+        private final long baseDelay;
+        private final long expire;
+        private final Action action;
+        private final int retries;
+        private final long timeout;
+        /**
+         * number of executions failed before
+         */
+        private final int attempt;
+
+        private boolean finished;
+        private volatile boolean timedOut;
+
+        DeferredTask(long baseDelay, Action action, int retries, long timeout, int attempt) {
+            this.baseDelay = baseDelay;
             this.retries = retries;
-            this.expire = new Date().getTime() + delay;
+            this.timeout = timeout;
+            this.attempt = attempt;
+            this.expire = System.currentTimeMillis() + getExecutionDelay();
             this.action = action;
         }
 
+        /**
+         * the first execution waits for the original delay. the first retry waits for the original delay too
+         * (at least 1 second), and doubles for each retry after
+         */
+        private long getExecutionDelay() {
+            if (attempt == 0) {
+                return baseDelay;
+            }
+            long base = Math.max(baseDelay, MIN_RETRY_DELAY);
+            return attempt > 20 ? MAX_RETRY_DELAY : Math.min(base << (attempt - 1), MAX_RETRY_DELAY);
+        }
+
+        /**
+         * interrupt the worker thread if the task is still running
+         */
+        synchronized void interrupt(Thread thread) {
+            if (!finished) {
+                timedOut = true;
+                timeoutCount.incrementAndGet();
+                thread.interrupt();
+            }
+        }
+
+        synchronized void finish() {
+            finished = true;
+        }
+
         /**
          * Returns the remaining delay associated with this object, in the
          * given time unit.
@@ -85,7 +308,7 @@ public class DeferredTasks {
          */
         @Override
         public long getDelay(@Nonnull TimeUnit unit) {
-            return TimeUnit.MILLISECONDS.convert(expire - new Date().getTime(), unit);
+            return unit.convert(expire - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
         }
 
         @Override
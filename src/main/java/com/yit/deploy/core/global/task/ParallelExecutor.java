@@ -0,0 +1,246 @@
+package com.yit.deploy.core.global.task;
+
+import com.yit.deploy.core.exceptions.ExitException;
+import com.yit.deploy.core.exceptions.ParallelExecutionException;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * execute branches in parallel on a bounded pool of threads.
+ *
+ * virtual threads are used if the running jvm supports them, otherwise a pool of platform threads.
+ * the caller also executes its own branches which are not picked up by the pool yet, so nested parallel
+ * executions never dead lock even if the pool is exhausted.
+ * once a branch fails, the other branches are cancelled, and all failures are reported together.
+ */
+public class ParallelExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelExecutor.class.getName());
+
+    public static final int DEFAULT_MAX_THREADS = 32;
+
+    private static volatile ParallelExecutor defaultExecutor = new ParallelExecutor(DEFAULT_MAX_THREADS);
+
+    /**
+     * the executor used by parallel steps outside of jenkins
+     */
+    public static ParallelExecutor getDefault() {
+        return defaultExecutor;
+    }
+
+    public static void setDefault(@Nonnull ParallelExecutor executor) {
+        defaultExecutor = executor;
+    }
+
+    private final ExecutorService pool;
+    private final boolean failFast;
+
+    /**
+     * @param maxThreads max number of branches executed by the pool at the same time
+     */
+    public ParallelExecutor(int maxThreads) {
+        this(maxThreads, true);
+    }
+
+    /**
+     * @param maxThreads max number of branches executed by the pool at the same time
+     * @param failFast cancel the other branches once a branch fails
+     */
+    public ParallelExecutor(int maxThreads, boolean failFast) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), createThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        this.pool = pool;
+        this.failFast = failFast;
+    }
+
+    /**
+     * use the given executor service to execute branches
+     *
+     * @param pool the executor service
+     * @param failFast cancel the other branches once a branch fails
+     */
+    public ParallelExecutor(@Nonnull ExecutorService pool, boolean failFast) {
+        this.pool = pool;
+        this.failFast = failFast;
+    }
+
+    /**
+     * execute the branches and wait for all of them to finish.
+     * the thread executing a branch is named after the branch during the execution.
+     *
+     * @param branches branch name -> branch
+     * @throws ParallelExecutionException if more than one branch failed, a single failure is thrown as it is
+     */
+    public void execute(@Nonnull Map<String, Runnable> branches) {
+        if (branches.isEmpty()) {
+            return;
+        }
+        if (branches.size() == 1) {
+            Map.Entry<String, Runnable> entry = branches.entrySet().iterator().next();
+            runNamed(entry.getKey(), entry.getValue());
+            return;
+        }
+
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        Map<String, Throwable> errors = Collections.synchronizedMap(new LinkedHashMap<>());
+        List<Branch> tasks = new ArrayList<>(branches.size());
+        CountDownLatch exited = new CountDownLatch(branches.size());
+        for (Map.Entry<String, Runnable> entry : branches.entrySet()) {
+            tasks.add(new Branch(entry.getKey(), entry.getValue(), contextClassLoader, errors, tasks, exited));
+        }
+
+        try {
+            for (Branch task : tasks) {
+                pool.execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.WARNING, "parallel executor rejected the branches, run them in the caller thread", e);
+        }
+
+        // run the branches not picked up by the pool yet, then wait for the others
+        for (Branch task : tasks) {
+            task.run();
+            if (task.runner == Thread.currentThread() && task.isCancelled()) {
+                // clear the interruption caused by the cancellation, it is not meant for the caller
+                Thread.interrupted();
+            }
+        }
+        // cancelled branches may still be running, so wait for all of them to exit instead of getting their results
+        try {
+            exited.await();
+        } catch (InterruptedException e) {
+            for (Branch task : tasks) {
+                task.cancel(true);
+            }
+            throw new ExitException(e);
+        }
+
+        ParallelExecutionException.throwIfFailed(new LinkedHashMap<>(errors));
+    }
+
+    private static void runNamed(String name, Runnable branch) {
+        Thread thread = Thread.currentThread();
+        String previousName = thread.getName();
+        thread.setName(name);
+        try {
+            branch.run();
+        } finally {
+            thread.setName(previousName);
+        }
+    }
+
+    /**
+     * create virtual threads if supported by the jvm, otherwise daemon platform threads
+     */
+    private static ThreadFactory createThreadFactory() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "parallel-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            AtomicInteger no = new AtomicInteger();
+            return r -> {
+                Thread t = new Thread(r, "parallel-" + no.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+
+    private class Branch extends FutureTask<Void> {
+        private final String name;
+        private final Map<String, Throwable> errors;
+        private final List<Branch> all;
+        private final CountDownLatch exited;
+        /**
+         * set by the first thread running the branch, the others skip it
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        /**
+         * the thread which executed the branch, either a pool thread or the caller
+         */
+        private volatile Thread runner;
+
+        Branch(String name, Runnable branch, ClassLoader contextClassLoader, Map<String, Throwable> errors,
+               List<Branch> all, CountDownLatch exited) {
+            this(name, new Body(name, branch, contextClassLoader), errors, all, exited);
+        }
+
+        private Branch(String name, Body body, Map<String, Throwable> errors, List<Branch> all, CountDownLatch exited) {
+            super(body, null);
+            this.name = name;
+            this.errors = errors;
+            this.all = all;
+            this.exited = exited;
+            body.owner = this;
+        }
+
+        /**
+         * the branch counts as exited once its body returns, or at once if it is cancelled before being started
+         */
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) {
+                try {
+                    super.run();
+                } finally {
+                    exited.countDown();
+                }
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            // branches failed due to the cancellation are not the reason of the failure
+            if (!isCancelled()) {
+                errors.put(name, t);
+                if (failFast) {
+                    for (Branch b : all) {
+                        if (b != this) {
+                            b.cancel(true);
+                        }
+                    }
+                }
+            }
+            super.setException(t);
+        }
+    }
+
+    private static class Body implements Runnable {
+        private final String name;
+        private final Runnable branch;
+        private final ClassLoader contextClassLoader;
+        private Branch owner;
+
+        Body(String name, Runnable branch, ClassLoader contextClassLoader) {
+            this.name = name;
+            this.branch = branch;
+            this.contextClassLoader = contextClassLoader;
+        }
+
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            owner.runner = thread;
+            ClassLoader previous = thread.getContextClassLoader();
+            // groovy scripts of the deploy config are loaded by the caller's class loader
+            thread.setContextClassLoader(contextClassLoader);
+            try {
+                runNamed(name, branch);
+            } finally {
+                thread.setContextClassLoader(previous);
+            }
+        }
+    }
+}
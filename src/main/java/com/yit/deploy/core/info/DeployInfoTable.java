@@ -5,6 +5,7 @@ import com.yit.deploy.core.exceptions.IllegalConfigException;
 import com.yit.deploy.core.model.*;
 import com.yit.deploy.core.records.*;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
@@ -17,6 +18,11 @@ public class DeployInfoTable implements JsonSupport<DeployInfoTable> {
     private final Map<String, EnvironmentInfo> envs;
     private final Map<String, PlaybookInfo> playbooks;
     private final Map<String, ProjectInfo> projects;
+    /**
+     * path of the project script file or folder -> names of the projects defined in it,
+     * only available for the info table loaded from a deploy config
+     */
+    private final transient Map<String, List<String>> projectSources;
 
     public DeployInfoTable(Commit commit,
                            Map<String, EnvironmentInfo> envs,
@@ -26,6 +32,7 @@ public class DeployInfoTable implements JsonSupport<DeployInfoTable> {
         this.envs = envs;
         this.playbooks = playbooks;
         this.projects = projects;
+        this.projectSources = null;
     }
 
     public DeployInfoTable(DeployInfoTable that) {
@@ -33,18 +40,61 @@ public class DeployInfoTable implements JsonSupport<DeployInfoTable> {
         this.envs = that.envs;
         this.playbooks = that.playbooks;
         this.projects = that.projects;
+        this.projectSources = that.projectSources;
     }
 
     public DeployInfoTable(DeployConfig deployConfig) {
+        this(deployConfig, null, Collections.emptySet());
+    }
+
+    /**
+     * load the info table from the scripts in deploy config, only the infos derived from the changed files
+     * and their descendants are re-evaluated, others are reused from the previous info table.
+     * since playbooks and projects are evaluated within environments, and projects within playbooks,
+     * all playbooks are re-evaluated once any environment is re-evaluated, so do projects.
+     *
+     * @param deployConfig deploy config
+     * @param previous the info table loaded from the previous version of deploy config, null to load all
+     * @param changedFiles files changed since the previous version
+     */
+    public DeployInfoTable(DeployConfig deployConfig, @Nullable DeployInfoTable previous, Set<String> changedFiles) {
+        if (previous == null || previous.projectSources == null) {
+            previous = new DeployInfoTable(null, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+        }
+
         this.commit = new Commit();
-        this.envs = Environments.load(deployConfig);
+        this.envs = Environments.load(deployConfig, previous.envs, changedFiles);
         Environments envs = new Environments(this.envs);
         if (!envs.hasRootEnv()) {
             throw new IllegalConfigException("root environment is not defined");
         }
-        this.playbooks = Playbooks.load(deployConfig, envs);
+
+        boolean envsReused = sameInfos(this.envs, previous.envs);
+        this.playbooks = Playbooks.load(deployConfig, envs,
+            envsReused ? previous.playbooks : Collections.emptyMap(), changedFiles);
         Playbooks playbooks = new Playbooks(this.playbooks);
-        this.projects = Projects.load(deployConfig, envs, playbooks);
+
+        boolean playbooksReused = envsReused && sameInfos(this.playbooks, previous.playbooks) && previous.projectSources != null;
+        this.projectSources = new HashMap<>();
+        this.projects = Projects.load(deployConfig, envs, playbooks,
+            playbooksReused ? previous.projects : Collections.emptyMap(),
+            playbooksReused ? previous.projectSources : Collections.emptyMap(),
+            changedFiles, this.projectSources);
+    }
+
+    /**
+     * check if all infos are reused from the previous ones
+     */
+    private static <T> boolean sameInfos(Map<String, T> current, Map<String, T> previous) {
+        if (current.size() != previous.size()) {
+            return false;
+        }
+        for (Map.Entry<String, T> entry : current.entrySet()) {
+            if (entry.getValue() != previous.get(entry.getKey())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public DeployInfoTable withRecordTables(List<DeployRecordTable> recordTables) {
@@ -7,6 +7,9 @@ import com.yit.deploy.core.exceptions.RenderTemplateException;
 import com.yit.deploy.core.function.Lambda;
 import com.yit.deploy.core.records.BuildRecord;
 import com.yit.deploy.core.steps.MailStep;
+import com.yit.deploy.core.tracing.Span;
+import com.yit.deploy.core.tracing.SpanKind;
+import com.yit.deploy.core.tracing.TimingSummary;
 import hudson.AbortException;
 
 import java.text.DateFormat;
@@ -24,6 +27,7 @@ public class Build {
 
     private BuildRecord record;
     private GitCommitDetail projectCommit;
+    private Span span;
 
     public Build(Job job,
                  DeploySpec spec,
@@ -94,6 +98,7 @@ public class Build {
             record.getConfigCommitHash(),
             record.getRecordCommitId());
 
+        span = Span.startRoot(SpanKind.build, job.getJobName());
         try {
             script.createWorkSpaceFolders();
             job.execute(this);
@@ -111,6 +116,7 @@ public class Build {
             record.setFailed(true);
             record.setFailedType(failedType);
             record.setFailedMessage(failedMessage);
+            span.fail(t);
 
             InterruptedException interrupted = ExitException.firstInterrupted(t);
             if (interrupted != null) {
@@ -123,10 +129,21 @@ public class Build {
 
             throw t;
         } finally {
+            span.close();
+            record.setTimingSummary(TimingSummary.of(span).toJson());
             service.finishBuild(record);
         }
     }
 
+    /**
+     * the timing of this build, including its hooks, plays, hosts, tasks and resource acquisitions
+     *
+     * @return the span of the build, null if the build is not started
+     */
+    public Span getSpan() {
+        return span;
+    }
+
     public void setProjectCommit(GitCommitDetail detail) {
         if (record == null) {
             throw new IllegalStateException("build is not started");
@@ -17,6 +17,30 @@ public class DeployModelTable {
     private final Jobs jobs;
 
     public DeployModelTable(DeployConfig deployConfig, DeployInfoTable infoTable) {
+        this(deployConfig, infoTable, 1);
+    }
+
+    /**
+     * build the model table
+     *
+     * @param deployConfig deploy config
+     * @param infoTable info table
+     * @param parallelism how many environments can be built at the same time, 1 to build sequentially
+     */
+    public DeployModelTable(DeployConfig deployConfig, DeployInfoTable infoTable, int parallelism) {
+        this(deployConfig, infoTable, parallelism, false);
+    }
+
+    /**
+     * build the model table
+     *
+     * @param deployConfig deploy config
+     * @param infoTable info table
+     * @param parallelism how many environments can be built at the same time, 1 to build sequentially
+     * @param lazy if set to true, jobs of an environment are created and initialized on first access,
+     *             so configuration errors in jobs are not reported until they are accessed
+     */
+    public DeployModelTable(DeployConfig deployConfig, DeployInfoTable infoTable, int parallelism, boolean lazy) {
         this.commit = infoTable.getCommit();
         this.deployConfig = deployConfig;
         this.infoTable = infoTable;
@@ -30,7 +54,7 @@ public class DeployModelTable {
 
         this.projects = new Projects(infoTable.getProjects(), this.envs);
 
-        this.jobs = new Jobs(this);
+        this.jobs = new Jobs(this, parallelism, lazy);
         this.jobs.initialize();
     }
 
@@ -106,9 +106,33 @@ public class Environments implements Iterable<Environment> {
     }
 
     public static Map<String, EnvironmentInfo> load(DeployConfig deployConfig) {
+        return load(deployConfig, Collections.emptyMap(), Collections.emptySet());
+    }
+
+    /**
+     * load all environments, reusing the previously loaded environments
+     * if neither their scripts nor the scripts of their parents are changed
+     *
+     * @param deployConfig deploy config
+     * @param previous environments loaded previously
+     * @param changedFiles files changed since the previous loading
+     * @return env name -> env info mapping
+     */
+    public static Map<String, EnvironmentInfo> load(DeployConfig deployConfig,
+                                                    Map<String, EnvironmentInfo> previous,
+                                                    Set<String> changedFiles) {
+
         List<DeployConfig.File> files = deployConfig.getEnvsFolder().listScriptsRecursive();
         Map<String, EnvironmentInfo> envs = new HashMap<>(files.size());
 
+        Map<String, Boolean> reusable = new HashMap<>();
+        for (DeployConfig.File file : files) {
+            String name = file.getEnvironmentName();
+            if (isReusable(name, deployConfig, previous, changedFiles, reusable)) {
+                envs.put(name, previous.get(name));
+            }
+        }
+
         for (DeployConfig.File file : files) {
             String name = file.getEnvironmentName();
             if (!envs.containsKey(name)) {
@@ -119,6 +143,33 @@ public class Environments implements Iterable<Environment> {
         return envs;
     }
 
+    private static boolean isReusable(String name,
+                                      DeployConfig deployConfig,
+                                      Map<String, EnvironmentInfo> previous,
+                                      Set<String> changedFiles,
+                                      Map<String, Boolean> cache) {
+
+        Boolean cached = cache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        EnvironmentInfo info = previous.get(name);
+        DeployConfig.File file = deployConfig.getEnvironmentScriptFile(name);
+        boolean result = info != null && file != null && !changedFiles.contains(file.path);
+        if (result) {
+            for (String p : info.getParents()) {
+                if (!isReusable(p, deployConfig, previous, changedFiles, cache)) {
+                    result = false;
+                    break;
+                }
+            }
+        }
+
+        cache.put(name, result);
+        return result;
+    }
+
     public static String envName(@Nullable String name) {
         return name == null ? ROOT_ENVIRONMENT_NAME : name;
     }
@@ -6,10 +6,26 @@ import com.yit.deploy.core.info.HostInfo;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Host {
 
+    private static final Logger LOGGER = Logger.getLogger(Host.class.getName());
+
+    /**
+     * max number of hosts probed at the same time while gathering facts
+     */
+    public static final int FACTS_PARALLELISM = 32;
+
+    /**
+     * print uname, hostname and ip addresses in three lines, `hostname -I` is not supported on darwin
+     */
+    private static final String FACTS_SHELL = "uname; hostname; hostname -I 2>/dev/null || echo";
+
     private final String user;
     private final String name;
     private final int port;
@@ -64,6 +80,62 @@ public class Host {
         return facts.getPublicIPAddress();
     }
 
+    /**
+     * load uname, hostname and public ip address of the host by one command, unless they are all cached
+     */
+    public void gatherFacts() {
+        facts.gather();
+    }
+
+    /**
+     * gather facts of the hosts in parallel, so that they are not fetched one by one once they are used.
+     * hosts whose facts are all cached are skipped.
+     * failures are only logged, the facts of the failed hosts are fetched on demand later.
+     *
+     * @param hosts hosts to gather facts
+     */
+    public static void gatherFacts(Collection<Host> hosts) {
+        List<Host> list = Lambda.findAll(hosts, h -> !h.facts.isCached());
+        if (list.isEmpty()) {
+            return;
+        }
+        if (list.size() == 1) {
+            gatherFactsQuietly(list.get(0));
+            return;
+        }
+
+        AtomicInteger no = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(FACTS_PARALLELISM, list.size()), r -> {
+            Thread t = new Thread(r, "host-facts-" + no.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(list.size());
+            for (Host host : list) {
+                futures.add(executor.submit(() -> gatherFactsQuietly(host)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while gathering facts of hosts", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void gatherFactsQuietly(Host host) {
+        try {
+            host.gatherFacts();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "failed to gather facts of host " + host.getName(), e);
+        }
+    }
+
     public boolean isLinux() {
         return "Linux".equals(this.getUname());
     }
@@ -154,6 +226,34 @@ public class Host {
             return x -> processLauncher(shell).timeout(3000).executeReturnText();
         }
 
+        /**
+         * populate the cache of all facts by one command, the command is executed only if any of them is missing
+         */
+        void gather() {
+            String[][] lines = new String[1][];
+            Function<Integer, Function<String, String>> fetcher = i -> x -> {
+                if (lines[0] == null) {
+                    lines[0] = Arrays.copyOf(processLauncher(FACTS_SHELL).timeout(3000).executeReturnText().split("\n", -1), 3);
+                }
+                return lines[0][i] == null ? "" : lines[0][i].trim();
+            };
+            _uname = HostInfoCache.get(name, "uname", fetcher.apply(0));
+            _hostname = HostInfoCache.get(name, "hostname", fetcher.apply(1));
+            _publicIPAddress = HostInfoCache.get(name, "public-ip", x -> {
+                String ips = "Linux".equals(_uname) ? fetcher.apply(2).apply(x) : null;
+                return findPublicIPAddress(ips);
+            });
+        }
+
+        /**
+         * whether all facts could be got without executing any command
+         */
+        boolean isCached() {
+            return (_uname != null || HostInfoCache.isCached(name, "uname")) &&
+                (_hostname != null || HostInfoCache.isCached(name, "hostname")) &&
+                (_publicIPAddress != null || HostInfoCache.isCached(name, "public-ip"));
+        }
+
         String getUname() {
             if (_uname == null) _uname = HostInfoCache.get(name, "uname", getFetcher("uname"));
             return _uname;
@@ -167,19 +267,30 @@ public class Host {
         String getPublicIPAddress() {
             if (_publicIPAddress == null) {
                 _publicIPAddress = HostInfoCache.get(name, "public-ip", x -> {
-                    String address = null;
+                    String ips = null;
                     if ("Linux".equals(getUname())) {
-                        List<String> ips = Lambda.tokenize(processLauncher("hostname -I").timeout(3000).executeReturnText(), " ");
-                        address = Lambda.find(ips, ip ->
-                                !(ip.startsWith("10.") || ip.startsWith("192.") || ip.startsWith("172.")));
-                    }
-                    if (address == null) {
-                        address = "0.0.0.0";
+                        ips = processLauncher("hostname -I").timeout(3000).executeReturnText();
                     }
-                    return address;
+                    return findPublicIPAddress(ips);
                 });
             }
             return _publicIPAddress;
         }
+
+        /**
+         * @param ips output of `hostname -I`, null if not supported
+         * @return the first non-private address, or 0.0.0.0 if not found
+         */
+        String findPublicIPAddress(String ips) {
+            String address = null;
+            if (ips != null) {
+                address = Lambda.find(Lambda.tokenize(ips, " "), ip ->
+                        !(ip.startsWith("10.") || ip.startsWith("192.") || ip.startsWith("172.")));
+            }
+            if (address == null) {
+                address = "0.0.0.0";
+            }
+            return address;
+        }
     }
 }
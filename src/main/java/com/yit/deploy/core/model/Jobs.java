@@ -1,57 +1,401 @@
 package com.yit.deploy.core.model;
 
+import com.yit.deploy.core.dsl.evaluate.ProjectEvaluationContext;
 import com.yit.deploy.core.exceptions.IllegalConfigException;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 public class Jobs {
 
     /**
-     * env -> project -> job mapping
+     * the default parallelism used to build jobs, one thread per available processor
      */
-    private final Map<String, Map<String, Job>> map;
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
 
-    private final Map<String, Job> jobMap;
+    /**
+     * env -> jobs in env mapping, in the order of the environments in the model table
+     */
+    private final Map<String, EnvJobs> envs;
+
+    /**
+     * job name -> job mapping, built in the constructor in eager mode,
+     * and on the first lookup by name in lazy mode
+     */
+    private volatile Map<String, Job> jobMap;
+
+    /**
+     * job name -> (env, project) of the jobs which may have the name, built on the first lookup by name in lazy mode.
+     * the names are evaluated without creating the jobs, so only the envs of the matched jobs are materialized.
+     */
+    private volatile Map<String, List<JobKey>> nameIndex;
+
+    private final DeployModelTable modelTable;
+
+    /**
+     * how many environments can be built at the same time
+     */
+    private final int parallelism;
+
+    /**
+     * if jobs of an environment are only created and initialized when they are accessed at the first time
+     */
+    private final boolean lazy;
+
+    /**
+     * thread -> the env whose lock it is waiting for, used to find the threads waiting for each other
+     */
+    private final Map<Thread, EnvJobs> waiting = new ConcurrentHashMap<>();
 
     public Jobs(DeployModelTable modelTable) {
-        this.map = new HashMap<>(modelTable.getEnvs().size());
-        this.jobMap = new HashMap<>(modelTable.getEnvs().size() * modelTable.getProjects().size());
+        this(modelTable, 1);
+    }
+
+    public Jobs(DeployModelTable modelTable, int parallelism) {
+        this(modelTable, parallelism, false);
+    }
 
+    /**
+     * build all jobs of the model table
+     *
+     * @param modelTable model table
+     * @param parallelism how many environments can be built at the same time, 1 to build sequentially
+     * @param lazy if set to true, jobs of an environment are created and initialized on first access
+     */
+    public Jobs(DeployModelTable modelTable, int parallelism, boolean lazy) {
+        this.modelTable = modelTable;
+        this.parallelism = parallelism;
+        this.lazy = lazy;
+
+        this.envs = new LinkedHashMap<>(modelTable.getEnvs().size());
         for (Environment env : modelTable.getEnvs()) {
-            if (env.isAbstracted()) {
-                continue;
+            if (!env.isAbstracted()) {
+                this.envs.put(env.getName(), new EnvJobs(env));
+            }
+        }
+
+        if (!lazy) {
+            this.jobMap = createAll();
+        }
+    }
+
+    /**
+     * create the jobs of all envs which are not created yet, and build the job name index
+     *
+     * @return job name -> job mapping
+     */
+    private Map<String, Job> createAll() {
+        List<EnvJobs> list = new ArrayList<>(envs.size());
+        for (EnvJobs e : envs.values()) {
+            if (e.jobs == null) {
+                list.add(e);
+            }
+        }
+
+        // jobs are created without holding the locks, since creating a job may access jobs in other envs.
+        // if we are already in a materialization, workers would wait for the lock held by us, so do it in our thread.
+        List<Map<String, Job>> built = forEach(list, e -> createJobsInEnv(e.env),
+            isMaterializing() ? 1 : parallelism);
+
+        for (int i = 0; i < list.size(); i++) {
+            EnvJobs e = list.get(i);
+            synchronized (e) {
+                if (e.jobs == null) {
+                    e.jobs = built.get(i);
+                }
+            }
+        }
+
+        Map<String, Job> jobMap = new HashMap<>(envs.size() * modelTable.getProjects().size());
+        // merge in the order of envs and projects, so that duplicated jobs are always reported in the same way
+        for (EnvJobs e : envs.values()) {
+            for (Job job : e.jobs.values()) {
+                if (jobMap.put(job.getJobName(), job) != null) {
+                    throw new IllegalConfigException("duplicated job " + job.getJobName());
+                }
             }
+        }
+        return jobMap;
+    }
 
+    /**
+     * evaluate the job names of all projects in all envs, without creating the jobs
+     *
+     * @return job name -> (env, project) mapping
+     */
+    private Map<String, List<JobKey>> createNameIndex() {
+        Map<String, List<JobKey>> index = new HashMap<>(envs.size() * modelTable.getProjects().size());
+        for (EnvJobs e : envs.values()) {
             for (Project project : modelTable.getProjects()) {
                 if (project.isAbstracted()) {
                     continue;
                 }
+                Object name = new ProjectEvaluationContext(project, e.env, modelTable)
+                    .getVariable(Project.JOB_NAME_VARIABLE);
+                if (name != null) {
+                    index.computeIfAbsent(name.toString(), k -> new ArrayList<>(1))
+                        .add(new JobKey(e, project.getProjectName()));
+                }
+            }
+        }
+        return index;
+    }
 
-                Job job = new Job(env, modelTable.getPlaybooks(), project, modelTable);
-                if (job.isDisabled()) {
-                    continue;
+    private Map<String, Job> createJobsInEnv(Environment env) {
+        Map<String, Job> jobs = new LinkedHashMap<>(modelTable.getProjects().size());
+        for (Project project : modelTable.getProjects()) {
+            if (project.isAbstracted()) {
+                continue;
+            }
+
+            Job job = new Job(env, modelTable.getPlaybooks(), project, modelTable);
+            if (job.isDisabled()) {
+                continue;
+            }
+
+            jobs.put(project.getProjectName(), job);
+        }
+        return jobs;
+    }
+
+    private static void initializeJobs(Map<String, Job> jobs) {
+        for (Job job : jobs.values()) {
+            if (job.isDisabled()) continue;
+
+            job.initialize();
+        }
+    }
+
+    /**
+     * initialize all jobs. in lazy mode, nothing will be done, jobs are initialized on first access.
+     */
+    public void initialize() {
+        if (lazy) {
+            return;
+        }
+
+        List<EnvJobs> list = new ArrayList<>(envs.values());
+        forEach(list, e -> {
+            initializeJobs(e.jobs);
+            return null;
+        }, parallelism);
+        for (EnvJobs e : list) {
+            e.initialized = true;
+        }
+    }
+
+    /**
+     * get the jobs in the env, create and initialize them if not done yet
+     *
+     * @param e jobs in env
+     * @return project -> job mapping
+     */
+    private Map<String, Job> materialize(EnvJobs e) {
+        if (!lazy || e.initialized) {
+            return e.jobs;
+        }
+
+        if (!lock(e)) {
+            // the thread materializing the env is waiting for an env materialized by us, so we get the jobs
+            // being initialized, just like a re-entrant access does
+            return create(e);
+        }
+        try {
+            create(e);
+            // a re-entrant access during the initialization gets the created jobs,
+            // just like what happens in eager mode
+            if (!e.initialized && !e.initializing) {
+                e.initializing = true;
+                try {
+                    initializeJobs(e.jobs);
+                    e.initialized = true;
+                } finally {
+                    e.initializing = false;
                 }
+            }
+            return e.jobs;
+        } finally {
+            e.lock.unlock();
+        }
+    }
 
-                this.map.computeIfAbsent(env.getName(), e -> new HashMap<>(modelTable.getProjects().size()))
-                    .put(project.getProjectName(), job);
+    /**
+     * create the jobs in the env if not created yet. they are created without holding the monitor of the env,
+     * since creating a job may access jobs in other envs.
+     *
+     * @return project -> job mapping
+     */
+    private Map<String, Job> create(EnvJobs e) {
+        if (e.jobs == null) {
+            Map<String, Job> jobs = createJobsInEnv(e.env);
+            synchronized (e) {
+                if (e.jobs == null) {
+                    e.jobs = jobs;
+                }
+            }
+        }
+        return e.jobs;
+    }
 
-                if (this.jobMap.put(job.getJobName(), job) != null) {
-                    throw new IllegalConfigException("duplicated job " + job.getJobName());
+    /**
+     * acquire the lock of the env. envs are materialized at the same time in different threads, but evaluating
+     * jobs of one env may access jobs of another env, so two threads may wait for the envs locked by each other.
+     *
+     * @param e jobs in env
+     * @return false if the lock is not acquired since its owner is waiting for us directly or indirectly
+     */
+    private boolean lock(EnvJobs e) {
+        if (e.lock.tryLock()) {
+            return true;
+        }
+
+        Thread current = Thread.currentThread();
+        waiting.put(current, e);
+        try {
+            while (!e.lock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                if (isWaitingFor(e, current)) {
+                    return false;
                 }
             }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building jobs", ex);
+        } finally {
+            waiting.remove(current);
         }
     }
 
-    public void initialize() {
-        for (Map<String, Job> m : map.values()) {
-            for (Job job : m.values()) {
-                if (job.isDisabled()) continue;
+    /**
+     * check if the owner of the env lock is waiting for the thread, directly or through other threads
+     */
+    private boolean isWaitingFor(EnvJobs e, Thread thread) {
+        Set<EnvJobs> visited = new HashSet<>();
+        for (EnvJobs x = e; x != null && visited.add(x); ) {
+            Thread owner = x.lock.owner();
+            if (owner == null) {
+                return false;
+            }
+            if (owner == thread) {
+                return true;
+            }
+            x = waiting.get(owner);
+        }
+        return false;
+    }
 
-                job.initialize();
+    private boolean isMaterializing() {
+        for (EnvJobs e : envs.values()) {
+            if (e.lock.isHeldByCurrentThread()) {
+                return true;
             }
         }
+        return false;
+    }
+
+    /**
+     * get the job name index, build it in lazy mode if not done yet
+     *
+     * @return job name -> job mapping
+     */
+    private Map<String, Job> getJobMap() {
+        Map<String, Job> m = jobMap;
+        if (m == null) {
+            // concurrent callers may build the index at the same time, they get equivalent results
+            jobMap = m = createAll();
+        }
+        return m;
+    }
+
+    /**
+     * apply the function to each env, in parallel if parallelism is greater than 1.
+     * in parallel mode all envs are processed even if some of them failed,
+     * and the errors are reported together in the order of the envs.
+     *
+     * @param list jobs in envs
+     * @param f the function to apply
+     * @param parallelism how many envs can be processed at the same time
+     * @return the results, in the same order of list
+     */
+    private static <T> List<T> forEach(List<EnvJobs> list, Function<EnvJobs, T> f, int parallelism) {
+        List<T> results = new ArrayList<>(list.size());
+        if (parallelism <= 1 || list.size() <= 1) {
+            for (EnvJobs e : list) {
+                results.add(f.apply(e));
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(parallelism, list.size()),
+            createThreadFactory(Thread.currentThread().getContextClassLoader()));
+
+        Map<String, Throwable> errors = new LinkedHashMap<>();
+        try {
+            List<Future<T>> futures = new ArrayList<>(list.size());
+            for (EnvJobs e : list) {
+                futures.add(executor.submit(() -> f.apply(e)));
+            }
+
+            for (int i = 0; i < list.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    errors.put(list.get(i).env.getName(), e.getCause());
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building jobs", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (errors.size() == 1) {
+            Throwable t = errors.values().iterator().next();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            StringBuilder sb = new StringBuilder("failed to build jobs in environments:");
+            for (Map.Entry<String, Throwable> entry : errors.entrySet()) {
+                sb.append("\n  ").append(entry.getKey()).append(": ").append(entry.getValue().getMessage());
+            }
+            Iterator<Throwable> iter = errors.values().iterator();
+            IllegalConfigException e = new IllegalConfigException(sb.toString(), iter.next());
+            while (iter.hasNext()) {
+                e.addSuppressed(iter.next());
+            }
+            throw e;
+        }
+
+        return results;
+    }
+
+    private static ThreadFactory createThreadFactory(ClassLoader contextClassLoader) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "jobs-builder-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            // groovy scripts of the deploy config are loaded by the caller's class loader
+            t.setContextClassLoader(contextClassLoader);
+            return t;
+        };
     }
 
     public Job get(String env, String project) {
@@ -59,8 +403,9 @@ public class Jobs {
             return null;
         }
 
-        Map<String, Job> pm = map.get(env);
-        if (pm == null) {
+        EnvJobs e = envs.get(env);
+        Map<String, Job> pm = e == null ? null : materialize(e);
+        if (pm == null || pm.isEmpty()) {
             throw new IllegalConfigException("environment " + env + " does not contain any job");
         }
 
@@ -76,21 +421,53 @@ public class Jobs {
             return null;
         }
 
-        Map<String, Job> pm = map.get(env);
-        if (pm == null) {
+        EnvJobs e = envs.get(env);
+        if (e == null) {
             return null;
         }
 
-        Job job = pm.get(project);
-        if (job == null) {
-            return null;
+        return materialize(e).get(project);
+    }
+
+    public Job findByName(String jobName) {
+        if (lazy && jobMap == null) {
+            Job job = findByNameIndex(jobName);
+            if (job != null) {
+                return job;
+            }
         }
 
+        Job job = getJobMap().get(jobName);
+        if (job != null) {
+            materialize(envs.get(job.getEnvName()));
+        }
         return job;
     }
 
-    public Job findByName(String jobName) {
-        return jobMap.get(jobName);
+    /**
+     * find the job by the name index, only the envs of the jobs which may have the name are materialized
+     *
+     * @return null if not found, the caller falls back to the full job map in case the name is evaluated differently
+     * in the job, such as by the playbook variables
+     */
+    private Job findByNameIndex(String jobName) {
+        Map<String, List<JobKey>> index = nameIndex;
+        if (index == null) {
+            // concurrent callers may build the index at the same time, they get equivalent results
+            nameIndex = index = createNameIndex();
+        }
+
+        Job found = null;
+        for (JobKey key : index.getOrDefault(jobName, Collections.emptyList())) {
+            Job job = materialize(key.env).get(key.project);
+            if (job != null && jobName.equals(job.getJobName())) {
+                if (found != null) {
+                    throw new IllegalConfigException("duplicated job " + jobName);
+                }
+                found = job;
+            }
+        }
+        return found;
     }
 
     public Job getByName(String jobName) {
@@ -102,6 +479,51 @@ public class Jobs {
     }
 
     public Collection<Job> getJobsInEnv(String envName) {
-        return map.get(envName).values();
+        EnvJobs e = envs.get(envName);
+        if (e == null) {
+            return Collections.emptyList();
+        }
+        return materialize(e).values();
+    }
+
+    /**
+     * jobs of an environment and their materialization state
+     */
+    private static class EnvJobs {
+        final Environment env;
+        /**
+         * project -> job mapping, null if not created yet
+         */
+        volatile Map<String, Job> jobs;
+        volatile boolean initialized;
+        /**
+         * only accessed while holding the lock
+         */
+        boolean initializing;
+        /**
+         * guard the initialization of the jobs in lazy mode, each env has its own lock
+         * so that different envs can be materialized at the same time
+         */
+        final EnvLock lock = new EnvLock();
+
+        EnvJobs(Environment env) {
+            this.env = env;
+        }
+    }
+
+    private static class EnvLock extends ReentrantLock {
+        Thread owner() {
+            return getOwner();
+        }
+    }
+
+    private static class JobKey {
+        final EnvJobs env;
+        final String project;
+
+        JobKey(EnvJobs env, String project) {
+            this.env = env;
+            this.project = project;
+        }
     }
 }
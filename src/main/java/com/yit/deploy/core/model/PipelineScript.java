@@ -3,6 +3,7 @@ package com.yit.deploy.core.model;
 import com.yit.deploy.core.exceptions.ExitException;
 import com.yit.deploy.core.exceptions.TaskExecutionException;
 import com.yit.deploy.core.function.Lambda;
+import com.yit.deploy.core.global.task.ParallelExecutor;
 import com.yit.deploy.core.utils.GitUtils;
 import com.yit.deploy.core.utils.Utils;
 import groovy.lang.Closure;
@@ -470,18 +471,16 @@ public class PipelineScript implements Cloneable {
 
         @Override
         public void parallel(Map<String, Runnable> map) {
-            List<Thread> threads = Lambda.map(map, (key, value) -> new Thread(() -> {
-                echo("parallel thread: " + key);
-                value.run();
-            }, key));
-
-            for (Thread t : threads) {
-                try {
-                    t.join();
-                } catch (InterruptedException e) {
-                    throw new ExitException(e);
-                }
+            Map<String, Runnable> branches = new LinkedHashMap<>();
+            for (Map.Entry<String, Runnable> entry : map.entrySet()) {
+                String key = entry.getKey();
+                Runnable value = entry.getValue();
+                branches.put(key, () -> {
+                    echo("parallel thread: " + key);
+                    value.run();
+                });
             }
+            ParallelExecutor.getDefault().execute(branches);
         }
 
         @Override
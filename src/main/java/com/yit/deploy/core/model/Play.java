@@ -14,6 +14,8 @@ import com.yit.deploy.core.function.Lambda;
 import com.yit.deploy.core.info.PlaybookInfo;
 import com.yit.deploy.core.info.ResourceOperatorInfo;
 import com.yit.deploy.core.inherits.Inherits;
+import com.yit.deploy.core.tracing.Span;
+import com.yit.deploy.core.tracing.SpanKind;
 import com.yit.deploy.core.variables.LayeredVariables;
 import com.yit.deploy.core.variables.Variables;
 
@@ -124,6 +126,20 @@ public class Play {
     }
 
     public void execute(DeploySpec spec, JobExecutionContext context, Function<Host, Variables> writable) {
+        try (Span span = Span.start(SpanKind.play, name)) {
+            try {
+                executeInSpan(spec, context, writable);
+            } catch (ExitPlayException e) {
+                span.exit();
+                throw e;
+            } catch (RuntimeException | Error e) {
+                span.fail(e);
+                throw e;
+            }
+        }
+    }
+
+    private void executeInSpan(DeploySpec spec, JobExecutionContext context, Function<Host, Variables> writable) {
         PlayExecutionContext pcx = context.toPlay(this);
 
         if (!isEnabledIn(context)) {
@@ -187,6 +203,9 @@ public class Play {
 
         int stepSize = (int) Math.round(hosts.size() * serial);
 
+        // probe all hosts at once, instead of one by one once their facts are first used
+        Host.gatherFacts(hosts);
+
         if (stepSize <= 1) {
             for (Host host : hosts) {
                 if (!host.isLocalhost() && context.isSingleHostMode()) {
@@ -212,7 +231,8 @@ public class Play {
                         throw new IllegalStateException(
                             "there are more than one servers using the same hostname " + host.getHostname());
                     }
-                    map.put(host.getHostname(), () -> executeOnHost(spec, context, h, hostsInGroup, writable));
+                    // host spans started in the parallel branches are nested in the span of this play
+                    map.put(host.getHostname(), Span.propagate(() -> executeOnHost(spec, context, h, hostsInGroup, writable)));
                 }
 
                 if (serial < 1 && context.isSingleHostMode()) {
@@ -229,18 +249,23 @@ public class Play {
     private void executeOnHost(DeploySpec spec, PlayExecutionContext context, Host host, List<Host> hostsInGroup, Function<Host, Variables> writable) {
         HostExecutionContext hcx = context.toHost(host, hostsInGroup, writable.apply(host));
 
-        for (int i = retries; i >= 0; i--) {
-            try {
-                tasks.execute(spec, hcx, false, true);
-                break;
-            } catch (ExitPlayException e) {
-                context.getScript().echo("PLAY [%s]@%s exit with message: %s", name, host.getHostname(), e.getMessage());
-                break;
-            } catch (Exception e) {
-                if (i == 0 || ExitException.belongsTo(e)) {
-                    throw e;
-                } else {
-                    context.getScript().warn("PLAY [%s]@%s failed: %s\nRETRYING ... %d times left", name, host.getHostname(), e.getMessage(), i);
+        try (Span span = Span.start(SpanKind.host, host.getName(), host.getName())) {
+            for (int i = retries; i >= 0; i--) {
+                try {
+                    tasks.execute(spec, hcx, false, true);
+                    break;
+                } catch (ExitPlayException e) {
+                    span.exit();
+                    context.getScript().echo("PLAY [%s]@%s exit with message: %s", name, host.getHostname(), e.getMessage());
+                    break;
+                } catch (Exception e) {
+                    if (i == 0 || ExitException.belongsTo(e)) {
+                        span.fail(e);
+                        throw e;
+                    } else {
+                        span.retry();
+                        context.getScript().warn("PLAY [%s]@%s failed: %s\nRETRYING ... %d times left", name, host.getHostname(), e.getMessage(), i);
+                    }
                 }
             }
         }
@@ -9,6 +9,8 @@ import com.yit.deploy.core.info.*;
 import com.yit.deploy.core.function.Closures;
 import com.yit.deploy.core.function.Holder;
 import com.yit.deploy.core.function.Lambda;
+import com.yit.deploy.core.tracing.Span;
+import com.yit.deploy.core.tracing.SpanKind;
 import com.yit.deploy.core.variables.LayeredVariables;
 import com.yit.deploy.core.variables.SimpleVariables;
 import com.yit.deploy.core.variables.Variables;
@@ -122,11 +124,14 @@ public class Playbook {
 
         for (i = 0; i < hooks.size(); i++) {
             if (hooks.get(i).getSetup() != null) {
-                try {
-                    hooks.get(i).getSetup().delegateOnly(context);
-                } catch (Exception t) {
-                    hookException = t;
-                    break;
+                try (Span span = Span.start(SpanKind.hook, name + ":setup#" + i)) {
+                    try {
+                        hooks.get(i).getSetup().delegateOnly(context);
+                    } catch (Exception t) {
+                        span.fail(t);
+                        hookException = t;
+                        break;
+                    }
                 }
             }
         }
@@ -160,10 +165,13 @@ public class Playbook {
 
         for (i--; i >= 0; i--) {
             if (hooks.get(i).getTeardown() != null) {
-                try {
-                    hooks.get(i).getTeardown().delegateOnly(context);
-                } catch (Exception t) {
-                    context.getScript().warn("execute teardown hook of playbook %s failed: %s", name, t.getMessage());
+                try (Span span = Span.start(SpanKind.hook, name + ":teardown#" + i)) {
+                    try {
+                        hooks.get(i).getTeardown().delegateOnly(context);
+                    } catch (Exception t) {
+                        span.fail(t);
+                        context.getScript().warn("execute teardown hook of playbook %s failed: %s", name, t.getMessage());
+                    }
                 }
             }
         }
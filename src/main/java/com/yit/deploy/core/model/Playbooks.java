@@ -57,7 +57,7 @@ public class Playbooks {
             this.list = new ArrayList<>(this.validParameters.size());
         }
 
-        private Playbook getOrCreate(PlaybookInfo info, Map<String, Object> parameters, Map<String, PlaybookInfo> infoMap) {
+        private synchronized Playbook getOrCreate(PlaybookInfo info, Map<String, Object> parameters, Map<String, PlaybookInfo> infoMap) {
             for (Playbook p : list) {
                 boolean mismatch = false;
                 // find the first playbook which matches all the parameters provided
@@ -82,9 +82,37 @@ public class Playbooks {
     }
 
     public static Map<String, PlaybookInfo> load(DeployConfig deployConfig, Environments envs) {
+        return load(deployConfig, envs, Collections.emptyMap(), Collections.emptySet());
+    }
+
+    /**
+     * load all playbooks, reusing the previously loaded playbooks
+     * if neither their scripts nor the scripts of their parents are changed.
+     * NOTE: previous playbooks must be loaded within the same environments
+     *
+     * @param deployConfig deploy config
+     * @param envs environments
+     * @param previous playbooks loaded previously
+     * @param changedFiles files changed since the previous loading
+     * @return playbook name -> playbook info mapping
+     */
+    public static Map<String, PlaybookInfo> load(DeployConfig deployConfig,
+                                                 Environments envs,
+                                                 Map<String, PlaybookInfo> previous,
+                                                 Set<String> changedFiles) {
+
         DeployConfig.Folder root = deployConfig.getPlaybooksFolder();
         List<DeployConfig.File> files = root.listScriptsRecursive();
         Map<String, PlaybookInfo> playbooks = new HashMap<>(files.size());
+
+        Map<String, Boolean> reusable = new HashMap<>();
+        for (DeployConfig.File file : files) {
+            String name = file.getPlaybookName();
+            if (isReusable(name, deployConfig, previous, changedFiles, reusable)) {
+                playbooks.put(name, previous.get(name));
+            }
+        }
+
         for (DeployConfig.File file : files) {
             String name = file.getPlaybookName();
             if (!playbooks.containsKey(name)) {
@@ -93,4 +121,31 @@ public class Playbooks {
         }
         return playbooks;
     }
+
+    private static boolean isReusable(String name,
+                                      DeployConfig deployConfig,
+                                      Map<String, PlaybookInfo> previous,
+                                      Set<String> changedFiles,
+                                      Map<String, Boolean> cache) {
+
+        Boolean cached = cache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+
+        PlaybookInfo info = previous.get(name);
+        DeployConfig.File file = deployConfig.getPlaybookScriptFile(name);
+        boolean result = info != null && file.isExist() && !changedFiles.contains(file.path);
+        if (result) {
+            for (String p : info.getParents()) {
+                if (!isReusable(p, deployConfig, previous, changedFiles, cache)) {
+                    result = false;
+                    break;
+                }
+            }
+        }
+
+        cache.put(name, result);
+        return result;
+    }
 }
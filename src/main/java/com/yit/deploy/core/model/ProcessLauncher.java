@@ -34,6 +34,7 @@ public class ProcessLauncher {
     private boolean verbose = false;
     private int timeout = -1;
     private Set<Integer> allowedCodes = Collections.singleton(0);
+    private Consumer<PipelineScript> prepare;
 
     public ProcessLauncher() {}
 
@@ -120,6 +121,17 @@ public class ProcessLauncher {
         return this;
     }
 
+    /**
+     * run before the process is started, with the script of the launcher
+     *
+     * @param prepare the action to run
+     * @return this
+     */
+    public ProcessLauncher prepare(Consumer<PipelineScript> prepare) {
+        this.prepare = prepare;
+        return this;
+    }
+
     public ProcessLauncher pipeTo(ProcessLauncher pipeTo) {
         this.pipeTo = pipeTo;
         return this;
@@ -257,6 +269,9 @@ public class ProcessLauncher {
     }
 
     public ProcessExecutionStatus execute(boolean returnOutput) {
+        if (prepare != null) {
+            prepare.accept(script);
+        }
         try {
             return executeRecursive(returnOutput, null);
         } catch (InterruptedException | IOException e) {
@@ -108,11 +108,55 @@ public class Projects implements Iterable<Project> {
                                                 Environments envs,
                                                 Playbooks playbooks) {
 
+        return load(deployConfig, envs, playbooks, Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet(), new HashMap<>());
+    }
+
+    /**
+     * load all projects, reusing the previously loaded projects if neither the scripts defining them
+     * nor the scripts defining their parents are changed.
+     * NOTE: previous projects must be loaded within the same environments and playbooks
+     *
+     * @param deployConfig deploy config
+     * @param envs environments
+     * @param playbooks playbooks
+     * @param previous projects loaded previously
+     * @param previousSources the sources of the previous projects
+     * @param changedFiles files changed since the previous loading
+     * @param sources output parameter, path of the script file or folder -> names of the projects defined in it
+     * @return project name -> project info mapping
+     */
+    public static Map<String, ProjectInfo> load(DeployConfig deployConfig,
+                                                Environments envs,
+                                                Playbooks playbooks,
+                                                Map<String, ProjectInfo> previous,
+                                                Map<String, List<String>> previousSources,
+                                                Set<String> changedFiles,
+                                                Map<String, List<String>> sources) {
+
         DeployConfig.Folder root = deployConfig.getProjectsFolder();
         List<DeployConfig.DEntry> list = new LinkedList<>();
         list.add(root);
         root.listRecursive(list);
 
+        Map<String, ProjectInfo> projects = new HashMap<>();
+
+        Set<String> reusable = findReusableEntries(list, previous, previousSources, changedFiles);
+        if (!reusable.isEmpty()) {
+            for (Iterator<DeployConfig.DEntry> iter = list.iterator(); iter.hasNext(); ) {
+                DeployConfig.DEntry entry = iter.next();
+                if (reusable.contains(entry.path)) {
+                    List<String> names = previousSources.get(entry.path);
+                    for (String name : names) {
+                        projects.put(name, previous.get(name));
+                    }
+                    sources.put(entry.path, names);
+                    iter.remove();
+                }
+            }
+
+            LOGGER.info(() -> "[load-project] reuse " + reusable.size() + " project entries, reload " + list.size());
+        }
+
         // sort the list by history knowledge, so that we will use the right order to load each file
         synchronized (lastScriptFileSequence) {
             if (!lastScriptFileSequence.isEmpty()) {
@@ -123,7 +167,6 @@ public class Projects implements Iterable<Project> {
         }
 
         boolean sequenceChanged = false;
-        Map<String, ProjectInfo> projects = new HashMap<>();
         ProjectInfoAccessor accessor = ProjectInfoAccessor.from(projects);
 
         for (int i = 0; i < list.size(); i++) {
@@ -157,15 +200,18 @@ public class Projects implements Iterable<Project> {
                 LOGGER.fine(() -> "[load-project] swap project script " + entry.path + " and " + swap.path);
             }
 
+            List<String> names = new ArrayList<>(more.size());
             for (ProjectInfo p : more) {
                 if (projects.put(p.getProjectName(), p) != null) {
                     throw new IllegalConfigException("duplicated project " + p.getProjectName() + " found");
                 }
+                names.add(p.getProjectName());
             }
+            sources.put(list.get(i).path, names);
         }
 
-        // save current sequence
-        if (sequenceChanged) {
+        // save current sequence, only when all entries are loaded
+        if (sequenceChanged && reusable.isEmpty()) {
             synchronized (lastScriptFileSequence) {
                 lastScriptFileSequence.clear();
                 for (int i = 0; i < list.size(); i++) {
@@ -177,6 +223,62 @@ public class Projects implements Iterable<Project> {
         return projects;
     }
 
+    /**
+     * find all entries whose projects can be reused. an entry can not be reused if it is new, or its script is changed,
+     * or one of the projects defined in it inherits from a project defined in an entry which can not be reused.
+     *
+     * @return paths of the reusable entries
+     */
+    private static Set<String> findReusableEntries(List<DeployConfig.DEntry> list,
+                                                   Map<String, ProjectInfo> previous,
+                                                   Map<String, List<String>> previousSources,
+                                                   Set<String> changedFiles) {
+
+        if (previousSources.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<String> reusable = new HashSet<>(list.size());
+        Set<String> dirtyProjects = new HashSet<>();
+        for (DeployConfig.DEntry entry : list) {
+            List<String> names = previousSources.get(entry.path);
+            if (names == null) {
+                continue;
+            }
+            String script = entry instanceof DeployConfig.Folder ?
+                ((DeployConfig.Folder) entry).childScript(DeployConfig.PROJECT_INIT_SCRIPT_FILE).path :
+                entry.path;
+            if (changedFiles.contains(script)) {
+                dirtyProjects.addAll(names);
+            } else {
+                reusable.add(entry.path);
+            }
+        }
+
+        // projects defined in removed entries
+        for (Map.Entry<String, List<String>> entry : previousSources.entrySet()) {
+            if (!reusable.contains(entry.getKey())) {
+                dirtyProjects.addAll(entry.getValue());
+            }
+        }
+
+        // propagate to the descendants
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Iterator<String> iter = reusable.iterator(); iter.hasNext(); ) {
+                List<String> names = previousSources.get(iter.next());
+                if (Lambda.any(names, name -> Lambda.any(previous.get(name).getParents(), dirtyProjects::contains))) {
+                    dirtyProjects.addAll(names);
+                    iter.remove();
+                    changed = true;
+                }
+            }
+        }
+
+        return reusable;
+    }
+
     private static Collection<ProjectInfo> loadOne(DeployConfig.DEntry entry,
                                                     Environments envs,
                                                     Playbooks playbooks,
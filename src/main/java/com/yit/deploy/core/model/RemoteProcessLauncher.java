@@ -18,7 +18,10 @@ public class RemoteProcessLauncher {
             launcher.bash(finalShell);
         } else {
             finalShell = "set -euo pipefail\n" + finalShell;
-            launcher.cmd("ssh", "-o", "StrictHostKeyChecking=no", "-p", String.valueOf(host.getPort()), host.getUser() + "@" + host.getName(), finalShell);
+            launcher.cmd(SshConnections.sshCommand(host, finalShell));
+            if (SshConnections.isEnabled()) {
+                launcher.prepare(script -> SshConnections.prepareMaster(host, script));
+            }
         }
     }
 }
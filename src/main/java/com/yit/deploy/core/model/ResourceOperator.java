@@ -6,7 +6,11 @@ import com.yit.deploy.core.function.ClosureWrapper;
 import com.yit.deploy.core.function.Lambda;
 import com.yit.deploy.core.info.ResourceOperatorInfo;
 
+import com.yit.deploy.core.tracing.Span;
+import com.yit.deploy.core.tracing.SpanKind;
+
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -33,7 +37,13 @@ public class ResourceOperator {
         if (op == null || op.acquire == null) {
             throw new IllegalStateException("acquire method for resource " + key + " is not defined");
         }
-        op.acquire.with(context);
+        Span current = Span.current();
+        try (Span span = Span.start(SpanKind.resource, key)) {
+            op.acquire.with(context);
+            if (current != null) {
+                current.addResourceWait(TimeUnit.MILLISECONDS.toNanos(span.getDurationMillis()));
+            }
+        }
     }
 
     @SuppressWarnings("unchecked")
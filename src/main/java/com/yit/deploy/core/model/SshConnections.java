@@ -0,0 +1,212 @@
+package com.yit.deploy.core.model;
+
+import com.yit.deploy.core.exceptions.ProcessExecutionException;
+import com.yit.deploy.core.function.Lambda;
+import com.yit.deploy.core.global.resource.Resources;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * build ssh command lines sharing one multiplexed connection (ControlMaster) per user, host and port,
+ * so that the many small commands issued to a host do not pay the handshake each time.
+ *
+ * the master connection is started before the first ssh command to the target, on the node executing the command,
+ * and stays for a while (ControlPersist) after the last session ends, so masters still used by concurrent builds
+ * are never stopped by others. local masters are also asked to stop when the JVM exits.
+ */
+public class SshConnections {
+
+    private static final Logger LOGGER = Logger.getLogger(SshConnections.class.getName());
+
+    /**
+     * system property to turn off connection multiplexing
+     */
+    public static final String DISABLED_PROPERTY = "deploy.sshMultiplexing.disabled";
+
+    /**
+     * the socket of the master connection, the path is on the node running ssh.
+     * its directory is only accessible by the user running ssh, and %C (a hash of the local host, user, host
+     * and port) keeps the path short enough for a unix socket
+     */
+    private static volatile String controlPath = "~/.ssh/ppb-mux/%C";
+
+    /**
+     * how long (in seconds) an idle master connection stays
+     */
+    private static volatile int controlPersist = 120;
+
+    private static volatile boolean enabled = !Boolean.getBoolean(DISABLED_PROPERTY);
+
+    /**
+     * targets connected with multiplexing, node/user@host:port -> target
+     */
+    private static final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(SshConnections::stopLocalMasters, "ssh-connections-cleanup"));
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        SshConnections.enabled = enabled;
+    }
+
+    public static void setControlPath(String controlPath) {
+        SshConnections.controlPath = controlPath;
+    }
+
+    public static void setControlPersist(int seconds) {
+        SshConnections.controlPersist = seconds;
+    }
+
+    /**
+     * the ssh command line to execute a shell on the host
+     *
+     * @param host target host
+     * @param shell shell to execute
+     * @return command line
+     */
+    public static List<String> sshCommand(Host host, String shell) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("ssh");
+        cmd.addAll(options(host));
+        cmd.add(host.getUser() + "@" + host.getName());
+        cmd.add(shell);
+        return cmd;
+    }
+
+    /**
+     * the ssh command used as the remote shell of rsync, like rsync -e '...'
+     *
+     * @param host target host
+     * @return remote shell command
+     */
+    public static String rsyncRemoteShell(Host host) {
+        return "ssh " + String.join(" ", options(host));
+    }
+
+    /**
+     * ssh options to connect the host
+     *
+     * @param host target host
+     * @return ssh options
+     */
+    public static List<String> options(Host host) {
+        List<String> options = new ArrayList<>();
+        options.add("-o");
+        options.add("StrictHostKeyChecking=no");
+        if (enabled) {
+            options.add("-o");
+            options.add("ControlMaster=auto");
+            options.add("-o");
+            options.add("ControlPath=" + controlPath);
+            options.add("-o");
+            options.add("ControlPersist=" + controlPersist);
+        }
+        options.add("-p");
+        options.add(String.valueOf(host.getPort()));
+        return options;
+    }
+
+    /**
+     * start the master connection to the host on the node of the script if it is not started recently.
+     * only the setup of masters holds the ssh resource of the host, so that concurrent sessions over an existing
+     * master are not limited, while the handshakes to a host are.
+     * it is fine if the master is not started here, the sessions start one by themselves.
+     *
+     * @param host target host
+     * @param script pipeline script, determines the node running the master
+     */
+    public static void prepareMaster(Host host, PipelineScript script) {
+        String nodeName = script == null ? null : script.getNodeName();
+        Target target = targets.computeIfAbsent(
+            (nodeName == null ? "" : nodeName) + "/" + getTargetKey(host), k -> new Target(host));
+
+        long persist = controlPersist * 1000L;
+        // a master used within ControlPersist is still there
+        if (System.currentTimeMillis() - target.lastUsed < persist) {
+            target.lastUsed = System.currentTimeMillis();
+            return;
+        }
+
+        synchronized (target) {
+            if (System.currentTimeMillis() - target.lastUsed < persist) {
+                target.lastUsed = System.currentTimeMillis();
+                return;
+            }
+
+            Resources.ssh.acquire(host.getName());
+            try {
+                // a session sets up the master (ControlMaster=auto) which is then detached and stays
+                String shell = "mkdir -p -m 700 " + getControlDirectory() + " && " +
+                    String.join(" ", Lambda.map(sshCommand(host, "true"), SshConnections::quote));
+                new ProcessLauncher().script(script).bash(shell).executeReturnOutput();
+            } catch (ProcessExecutionException e) {
+                LOGGER.log(Level.FINE, "failed to start ssh master of " + getTargetKey(host), e);
+            } finally {
+                Resources.ssh.release(host.getName());
+            }
+            target.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * the directory of the control path as a shell word, with ~ expanded by the shell
+     */
+    private static String getControlDirectory() {
+        String path = controlPath;
+        String dir = path.substring(0, Math.max(path.lastIndexOf('/'), 0));
+        if (dir.startsWith("~/")) {
+            return "~/" + quote(dir.substring(2));
+        }
+        return dir.isEmpty() ? "." : quote(dir);
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
+    private static void stopLocalMasters() {
+        for (Target target : targets.values()) {
+            Host host = target.host;
+            try {
+                Process p = new ProcessBuilder(stopCommand(host)).redirectErrorStream(true).start();
+                p.getOutputStream().close();
+                if (!p.waitFor(5, TimeUnit.SECONDS)) {
+                    p.destroy();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "failed to stop ssh master of " + getTargetKey(host), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static List<String> stopCommand(Host host) {
+        return Arrays.asList("ssh", "-O", "stop", "-o", "ControlPath=" + controlPath,
+            "-p", String.valueOf(host.getPort()), host.getUser() + "@" + host.getName());
+    }
+
+    private static String getTargetKey(Host host) {
+        return host.getUser() + "@" + host.getName() + ":" + host.getPort();
+    }
+
+    private static class Target {
+        final Host host;
+        volatile long lastUsed;
+
+        Target(Host host) {
+            this.host = host;
+        }
+    }
+}
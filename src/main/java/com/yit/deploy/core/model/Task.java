@@ -6,6 +6,8 @@ import com.yit.deploy.core.exceptions.ExitException;
 import com.yit.deploy.core.exceptions.ExitPlayException;
 import com.yit.deploy.core.function.ClosureWrapper;
 import com.yit.deploy.core.info.TaskInfo;
+import com.yit.deploy.core.tracing.Span;
+import com.yit.deploy.core.tracing.SpanKind;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -90,6 +92,21 @@ public class Task {
         }
 
         script.timestamp();
+        try (Span span = Span.start(SpanKind.task, name, host.getName())) {
+            try {
+                executeInSpan(spec, context, span);
+            } catch (ExitPlayException e) {
+                span.exit();
+                throw e;
+            } catch (RuntimeException | Error e) {
+                span.fail(e);
+                throw e;
+            }
+        }
+    }
+
+    private void executeInSpan(DeploySpec spec, HostExecutionContext context, Span span) {
+        PipelineScript script = context.getScript();
         if (closure != null) {
             TaskExecutionContext tcx = context.toTask(this);
 
@@ -105,6 +122,7 @@ public class Task {
                     } else if (i == 0) {
                         throw e;
                     } else {
+                        span.retry();
                         script.warn("TASK [%s] failure: %s\nRETRYING ... %s times left", name, e, i);
                     }
                 }
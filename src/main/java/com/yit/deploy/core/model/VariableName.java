@@ -3,15 +3,40 @@ package com.yit.deploy.core.model;
 import com.yit.deploy.core.function.Lambda;
 
 import java.util.Arrays;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * name of a variable, fields are separated by dots.
+ * names are immutable, use {@link #parse(String)} or {@link #of(String[])} to get a shared instance,
+ * so that looking up the same name again does not allocate.
+ */
 public class VariableName {
 
-    public final String REPEATABLE_NAME = "*";
+    public static final String REPEATABLE_NAME = "*";
+
+    /**
+     * max number of names kept by the interning tables, names beyond it are still created but not shared
+     */
+    private static final int MAX_INTERNED = 100000;
+
+    private static final Map<VariableName, VariableName> INTERNED = new ConcurrentHashMap<>();
+    private static final Map<String, VariableName> PARSED = new ConcurrentHashMap<>();
 
     public final String[] path;
 
+    private final int hash;
+    private final String text;
+    /**
+     * field name -> the name of the field, created on demand
+     */
+    private volatile Map<String, VariableName> fields;
+    private volatile VariableName repeatableName;
+
     public VariableName(String[] path) {
         this.path = path;
+        this.hash = Arrays.hashCode(path);
+        this.text = path.length == 1 ? path[0] : String.join(".", path);
     }
 
     public String first() {
@@ -27,7 +52,23 @@ public class VariableName {
             throw new IllegalArgumentException("invalid field name " + fieldName);
         }
 
-        return new VariableName(Lambda.append(path, fieldName));
+        Map<String, VariableName> map = fields;
+        if (map == null) {
+            synchronized (this) {
+                if (fields == null) {
+                    fields = new ConcurrentHashMap<>();
+                }
+                map = fields;
+            }
+        }
+        VariableName name = map.get(fieldName);
+        if (name == null) {
+            name = of(Lambda.append(path, fieldName));
+            if (map.size() < MAX_INTERNED) {
+                map.putIfAbsent(fieldName, name);
+            }
+        }
+        return name;
     }
 
     public boolean repeatable() {
@@ -35,25 +76,91 @@ public class VariableName {
     }
 
     public VariableName toRepeatable() {
-        return new VariableName(Lambda.append(path, REPEATABLE_NAME));
+        VariableName name = repeatableName;
+        if (name == null) {
+            repeatableName = name = of(Lambda.append(path, REPEATABLE_NAME));
+        }
+        return name;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(path);
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof VariableName && Arrays.equals(path, ((VariableName) obj).path);
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VariableName)) {
+            return false;
+        }
+        VariableName other = (VariableName) obj;
+        return hash == other.hash && Arrays.equals(path, other.path);
     }
 
     @Override
     public String toString() {
-        return path.length == 1 ? path[0] : String.join(".", path);
+        return text;
+    }
+
+    /**
+     * get the shared name of the path. the path must not be changed after calling it.
+     *
+     * @param path fields of the name
+     * @return the shared name
+     */
+    public static VariableName of(String[] path) {
+        VariableName name = new VariableName(path);
+        VariableName interned = INTERNED.get(name);
+        if (interned != null) {
+            return interned;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            return name;
+        }
+        interned = INTERNED.putIfAbsent(name, name);
+        return interned == null ? name : interned;
     }
 
     public static VariableName parse(String name) {
-        return new VariableName(name.split("\\."));
+        VariableName parsed = PARSED.get(name);
+        if (parsed == null) {
+            parsed = of(split(name));
+            if (PARSED.size() < MAX_INTERNED) {
+                PARSED.putIfAbsent(name, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * split the name by dots, the same as name.split("\\.") without the regex
+     */
+    private static String[] split(String name) {
+        int count = 1;
+        for (int i = name.indexOf('.'); i >= 0; i = name.indexOf('.', i + 1)) {
+            count++;
+        }
+        if (count == 1) {
+            return name.isEmpty() ? new String[]{""} : new String[]{name};
+        }
+
+        String[] path = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = name.indexOf('.', start);
+            path[i] = name.substring(start, end);
+            start = end + 1;
+        }
+        path[count - 1] = name.substring(start);
+
+        // String.split removes the trailing empty strings
+        int length = count;
+        while (length > 0 && path[length - 1].isEmpty()) {
+            length--;
+        }
+        return length == count ? path : Arrays.copyOf(path, length);
     }
 }
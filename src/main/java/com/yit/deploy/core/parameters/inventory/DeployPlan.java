@@ -3,10 +3,15 @@ package com.yit.deploy.core.parameters.inventory;
 import com.yit.deploy.core.algorithm.Graph;
 import com.yit.deploy.core.diff.DetailDiff;
 import com.yit.deploy.core.diff.Datum;
+import com.yit.deploy.core.exceptions.ExitException;
+import com.yit.deploy.core.exceptions.ParallelExecutionException;
 import com.yit.deploy.core.function.Lambda;
 import com.yit.deploy.core.model.JsonSupport;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @DetailDiff
 public class DeployPlan implements JsonSupport<DeployPlan>, Datum {
@@ -89,7 +94,11 @@ public class DeployPlan implements JsonSupport<DeployPlan>, Datum {
             }
         }
 
-        List<String> seq = graph.topology();
+        List<String> topology = graph.topology();
+        Map<String, Integer> seq = new HashMap<>(topology.size());
+        for (int i = 0; i < topology.size(); i++) {
+            seq.put(topology.get(i), i);
+        }
 
         items.sort((a ,b) -> {
             int r = Integer.compare(a.getProject().getJobOrder(), b.getProject().getJobOrder());
@@ -101,7 +110,8 @@ public class DeployPlan implements JsonSupport<DeployPlan>, Datum {
                 return -1;
             }
 
-            return Integer.compare(seq.indexOf(a.getProjectName()), seq.indexOf(b.getProjectName()));
+            // empty project names are not in the graph, and are put first as before
+            return Integer.compare(seq.getOrDefault(a.getProjectName(), -1), seq.getOrDefault(b.getProjectName(), -1));
         });
 
         if (reverseOrder) {
@@ -109,6 +119,116 @@ public class DeployPlan implements JsonSupport<DeployPlan>, Datum {
         }
     }
 
+    /**
+     * partition the items into waves which are deployed one after another.
+     * items of different job orders are never in the same wave, and an item is put in a wave after
+     * all its dependencies of the same job order. items without a project name are deployed one by one
+     * after the other items of the same job order, since their dependencies are unknown.
+     *
+     * @return waves of items, items of the same wave do not depend on each other
+     */
+    public List<List<DeployItem>> getExecutionWaves() {
+        TreeMap<Integer, List<DeployItem>> groups = new TreeMap<>();
+        for (DeployItem item : items) {
+            groups.computeIfAbsent(item.getProject().getJobOrder(), k -> new ArrayList<>()).add(item);
+        }
+
+        List<List<DeployItem>> waves = new ArrayList<>();
+        for (List<DeployItem> group : groups.values()) {
+            Graph<DeployItem, String> graph = new Graph<>();
+            List<DeployItem> unnamed = new ArrayList<>();
+            for (DeployItem item : group) {
+                if (Lambda.isNullOrEmpty(item.getProjectName())) {
+                    unnamed.add(item);
+                } else {
+                    graph.node(item.getProjectName(), item);
+                }
+            }
+            for (DeployItem item : group) {
+                if (!Lambda.isNullOrEmpty(item.getProjectName())) {
+                    for (String dependency : item.getDependencies()) {
+                        // dependencies of lower job orders are already deployed in the previous waves
+                        if (graph.containsNode(dependency)) {
+                            graph.arc(dependency, item.getProjectName());
+                        }
+                    }
+                }
+            }
+
+            for (List<String> level : graph.levels()) {
+                waves.add(Lambda.map(level, graph::getAt));
+            }
+            for (DeployItem item : unnamed) {
+                waves.add(Collections.singletonList(item));
+            }
+        }
+
+        if (reverseOrder) {
+            Collections.reverse(waves);
+            for (int i = 0; i < waves.size(); i++) {
+                List<DeployItem> wave = new ArrayList<>(waves.get(i));
+                Collections.reverse(wave);
+                waves.set(i, wave);
+            }
+        }
+        return waves;
+    }
+
+    /**
+     * deploy the items wave by wave, items of a wave are deployed at the same time, at most {@link #getParallel()}
+     * ones. once an item failed, the others of the same wave are still deployed, but the next waves are not.
+     *
+     * @param deploy deploy an item
+     * @throws ParallelExecutionException if more than one item failed, a single failure is thrown as it is
+     */
+    public void executeInWaves(Consumer<DeployItem> deploy) {
+        List<List<DeployItem>> waves = getExecutionWaves();
+        int maxWaveSize = 0;
+        for (List<DeployItem> wave : waves) {
+            maxWaveSize = Math.max(maxWaveSize, wave.size());
+        }
+
+        if (parallel <= 1 || maxWaveSize <= 1) {
+            for (List<DeployItem> wave : waves) {
+                for (DeployItem item : wave) {
+                    deploy.accept(item);
+                }
+            }
+            return;
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallel, maxWaveSize), r -> {
+            Thread t = new Thread(r, "deploy-plan-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setContextClassLoader(contextClassLoader);
+            return t;
+        });
+        try {
+            for (List<DeployItem> wave : waves) {
+                List<Future<?>> futures = new ArrayList<>(wave.size());
+                for (DeployItem item : wave) {
+                    futures.add(executor.submit(() -> deploy.accept(item)));
+                }
+
+                Map<String, Throwable> errors = new LinkedHashMap<>();
+                for (int i = 0; i < wave.size(); i++) {
+                    try {
+                        futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        errors.put(wave.get(i).getId(), e.getCause());
+                    }
+                }
+                ParallelExecutionException.throwIfFailed(errors);
+            }
+        } catch (InterruptedException e) {
+            throw new ExitException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public void verifyForDeploy(int planId) {
 
         for (DeployItem item : items) {
@@ -156,6 +276,9 @@ public class DeployPlan implements JsonSupport<DeployPlan>, Datum {
         this.description = description;
     }
 
+    /**
+     * max number of items deployed at the same time by executeInWaves, 0 or 1 to deploy them one by one
+     */
     public int getParallel() {
         return parallel;
     }
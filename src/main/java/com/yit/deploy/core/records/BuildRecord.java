@@ -34,6 +34,11 @@ public class BuildRecord {
     private String projectCommitDetail;
     private Date projectCommitDate;
 
+    /**
+     * json of TimingSummary
+     */
+    private String timingSummary;
+
     public long getId() {
         return id;
     }
@@ -217,4 +222,12 @@ public class BuildRecord {
     public void setProjectCommitDate(Date projectCommitDate) {
         this.projectCommitDate = projectCommitDate;
     }
+
+    public String getTimingSummary() {
+        return timingSummary;
+    }
+
+    public void setTimingSummary(String timingSummary) {
+        this.timingSummary = timingSummary;
+    }
 }
@@ -0,0 +1,143 @@
+package com.yit.deploy.core.records;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.util.*;
+
+/**
+ * materialized record tables of all commits from the root of a branch up to a commit,
+ * so that the whole chain could be loaded at once instead of walking the commits one by one.
+ *
+ * commits are squashed into segments, applying the segments in order gives the same info table
+ * as applying the original commits in order.
+ * since the records of a table are applied in the order of envs, hosts, host groups, assigns and projects,
+ * a commit removing (disabling) an env or a project always starts a new segment,
+ * otherwise the records of the earlier commits depending on the removed env or project may be applied after the removal.
+ */
+public class CommitSnapshot {
+
+    private final long commitId;
+    private final List<DeployRecordTable> segments;
+
+    public CommitSnapshot(long commitId, List<DeployRecordTable> segments) {
+        this.commitId = commitId;
+        this.segments = segments;
+    }
+
+    /**
+     * squash the commits into a snapshot
+     *
+     * @param commits commits from the root to the snapshot commit, may include the segments of a previous snapshot
+     * @return snapshot at the last commit
+     */
+    public static CommitSnapshot squash(List<DeployRecordTable> commits) {
+        if (commits.isEmpty()) {
+            throw new IllegalArgumentException("no commits to squash");
+        }
+
+        Commit last = commits.get(commits.size() - 1).getCommit();
+        List<DeployRecordTable> segments = new ArrayList<>();
+        DeployRecordTable segment = null;
+        for (DeployRecordTable table : commits) {
+            if (segment == null || removesEnvOrProject(table)) {
+                segment = new DeployRecordTable();
+                segments.add(segment);
+            }
+            segment.setCommit(table.getCommit());
+            segment.setEnvs(concat(segment.getEnvs(), table.getEnvs()));
+            segment.setHosts(concat(segment.getHosts(), table.getHosts()));
+            segment.setHostGroups(concat(segment.getHostGroups(), table.getHostGroups()));
+            segment.setProjects(concat(segment.getProjects(), table.getProjects()));
+            segment.setAssigns(concat(segment.getAssigns(), table.getAssigns()));
+        }
+
+        for (DeployRecordTable s : segments) {
+            s.setAssigns(squashAssigns(s.getAssigns()));
+        }
+
+        return new CommitSnapshot(last.getId(), segments);
+    }
+
+    private static boolean removesEnvOrProject(DeployRecordTable table) {
+        if (table.getEnvs() != null) {
+            for (EnvironmentRecord r : table.getEnvs()) {
+                if (r.isDisabled()) {
+                    return true;
+                }
+            }
+        }
+        if (table.getProjects() != null) {
+            for (ProjectRecord r : table.getProjects()) {
+                if (r.isDisabled()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static <T> List<T> concat(List<T> list1, List<T> list2) {
+        if (list2 == null || list2.isEmpty()) {
+            return list1;
+        }
+        List<T> list = list1 == null ? new ArrayList<>(list2.size()) : list1;
+        list.addAll(list2);
+        return list;
+    }
+
+    /**
+     * an assignment replaces the previous one with the same id in the same target, so only the last one is kept.
+     * a disabled assignment removes the variable, which is kept before the last one if the last one is not disabled,
+     * so that the position of the variable is the same as applying them one by one.
+     */
+    private static List<Assignment> squashAssigns(List<Assignment> assigns) {
+        if (assigns == null) {
+            return null;
+        }
+
+        Map<String, Assignment> lasts = new HashMap<>();
+        Map<String, Assignment> removals = new HashMap<>();
+        for (Assignment assign : assigns) {
+            String key = getAssignKey(assign);
+            lasts.put(key, assign);
+            if (assign.isDisabled()) {
+                removals.put(key, assign);
+            }
+        }
+
+        List<Assignment> list = new ArrayList<>(lasts.size() + removals.size());
+        for (Assignment assign : assigns) {
+            String key = getAssignKey(assign);
+            Assignment last = lasts.get(key);
+            if (assign == last || assign == removals.get(key) && !last.isDisabled()) {
+                list.add(assign);
+            }
+        }
+        return list;
+    }
+
+    private static String getAssignKey(Assignment assign) {
+        if (assign.getScope() == AssignmentScope.project) {
+            return "project\n" + assign.getProjectName() + "\n" + assign.getId();
+        }
+        return "env\n" + assign.getEnvName() + "\n" + assign.getId();
+    }
+
+    public long getCommitId() {
+        return commitId;
+    }
+
+    public List<DeployRecordTable> getSegments() {
+        return segments;
+    }
+
+    public String toJson() {
+        return DeployRecordTable.GSON.toJson(segments);
+    }
+
+    public static CommitSnapshot fromJson(long commitId, String json) {
+        List<DeployRecordTable> segments = DeployRecordTable.GSON.fromJson(json,
+            new TypeToken<List<DeployRecordTable>>() {}.getType());
+        return new CommitSnapshot(commitId, segments);
+    }
+}
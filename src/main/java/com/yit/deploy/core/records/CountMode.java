@@ -0,0 +1,19 @@
+package com.yit.deploy.core.records;
+
+/**
+ * how the total count of a query is computed
+ */
+public enum CountMode {
+    /**
+     * do not count
+     */
+    none,
+    /**
+     * count all matched records, the cost grows with the number of matched records
+     */
+    exact,
+    /**
+     * estimate from the table statistics if there is no filter, otherwise count up to a limit
+     */
+    approximate
+}
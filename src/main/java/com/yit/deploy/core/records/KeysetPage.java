@@ -0,0 +1,52 @@
+package com.yit.deploy.core.records;
+
+import java.util.List;
+
+/**
+ * a page of records ordered by id descending, located by the last id seen in the previous page
+ * instead of an offset, so that the cost of a page does not grow with its depth.
+ */
+public class KeysetPage<T> {
+    private final int pageSize;
+    private final List<T> data;
+    /**
+     * pass it as the last seen id to get the next page, null if there is no more page
+     */
+    private final Long nextId;
+    /**
+     * total number of records, -1 if not counted
+     */
+    private final long totalCount;
+    /**
+     * whether the total count is exact, or just an estimation or a lower bound
+     */
+    private final boolean countExact;
+
+    public KeysetPage(int pageSize, List<T> data, Long nextId, long totalCount, boolean countExact) {
+        this.pageSize = pageSize;
+        this.data = data;
+        this.nextId = nextId;
+        this.totalCount = totalCount;
+        this.countExact = countExact;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public List<T> getData() {
+        return data;
+    }
+
+    public Long getNextId() {
+        return nextId;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public boolean isCountExact() {
+        return countExact;
+    }
+}
@@ -17,6 +17,8 @@ import com.yit.deploy.core.utils.Utils;
 import groovy.lang.Closure;
 import groovy.lang.DelegatesTo;
 import hudson.FilePath;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -35,6 +37,10 @@ public class FileStep extends AbstractFileStep {
     private boolean pure;
     private boolean withJinja;
     private boolean withDecrypt;
+    private boolean manifestSync = true;
+
+    private static final String MANIFEST_SEPARATOR = "--manifest-hashes--";
+    private static final String HEREDOC_DELIMITER = "__FILE_STEP_CONTENT__";
 
     private List<FileHook> hooks;
 
@@ -139,7 +145,11 @@ public class FileStep extends AbstractFileStep {
         assert content == null;
         if (source != null) {
             assert source.isDirectory();
-            syncDirectory(source, path, ss);
+            if (manifestSync && targetHost.isLinux()) {
+                syncDirectoryWithManifest(source, path, ss);
+            } else {
+                syncDirectory(source, path, ss);
+            }
         } else if (!ss.isExists()) {
             createDirectory(path);
         } else {
@@ -201,6 +211,250 @@ public class FileStep extends AbstractFileStep {
         }
     }
 
+    /**
+     * sync all children files and directories and the file attributes to target file, in a few round trips:
+     * the remote hash, mode and owner of all children are fetched in one command,
+     * then the changed files and attributes are applied in one script.
+     * @param from
+     * @param to
+     * @param ss
+     */
+    private void syncDirectoryWithManifest(FilePath from, String to, StatStruct ss) throws IOException, InterruptedException {
+        if (ss.isExists()) {
+            syncFileAttributes(to, ss);
+        } else {
+            createDirectory(to);
+        }
+
+        Map<String, LocalEntry> localEntries = new LinkedHashMap<>();
+        collectLocalEntries(from, "", localEntries);
+
+        // sorted, so that a folder is always visited before its children
+        Map<String, StatStruct> remoteStats = new TreeMap<>();
+        Map<String, String> remoteHashes = new HashMap<>();
+        if (ss.isExists()) {
+            fetchRemoteManifest(to, localEntries, remoteStats, remoteHashes);
+        }
+
+        List<String> dirsToCreate = new ArrayList<>();
+        List<String> filesToWrite = new ArrayList<>();
+        List<String> filesToUpdate = new ArrayList<>();
+        List<String> newEntries = new ArrayList<>();
+        List<String> ownerToChange = new ArrayList<>(), groupToChange = new ArrayList<>(), modeToChange = new ArrayList<>();
+
+        for (LocalEntry entry : localEntries.values()) {
+            String targetFile = to + "/" + entry.path;
+            StatStruct stat = remoteStats.get(entry.path);
+            FileType type = entry.content == null ? FileType.directory : FileType.file;
+            if (stat == null) {
+                getScript().info((type == FileType.directory ? "create folder " : "create file ") + targetFile);
+                if (type == FileType.directory) {
+                    dirsToCreate.add(entry.path);
+                } else {
+                    filesToWrite.add(entry.path);
+                }
+                newEntries.add(entry.path);
+                continue;
+            }
+
+            if (!type.equals(stat.getType())) {
+                throw new ChangeFileTypeException(targetFile, stat.getType(), type);
+            }
+
+            if (type == FileType.file && !entry.hash.equals(remoteHashes.get(entry.path))) {
+                filesToWrite.add(entry.path);
+                filesToUpdate.add(entry.path);
+            }
+            if (fileOwner != null && !Objects.equals(fileOwner, stat.getOwner())) {
+                getScript().info("change file %s owner to %s", targetFile, fileOwner);
+                ownerToChange.add(entry.path);
+            }
+            if (fileGroup != null && !Objects.equals(fileGroup, stat.getGroup())) {
+                getScript().info("change file %s group to %s", targetFile, fileGroup);
+                groupToChange.add(entry.path);
+            }
+            if (fileMode != null && !Objects.equals(fileMode, stat.getMode())) {
+                getScript().info("change file " + targetFile + " mode to " + fileMode);
+                modeToChange.add(entry.path);
+            }
+        }
+
+        logFileDiffs(to, filesToUpdate, localEntries);
+
+        List<String> filesToDelete = new ArrayList<>();
+        if (pure) {
+            for (String name : remoteStats.keySet()) {
+                // hidden files are kept, they are not matched by the glob dir/* used to sync a directory entry by entry
+                if (!localEntries.containsKey(name) && !isHidden(name) && !isInDeletedFolder(name, filesToDelete)) {
+                    getScript().info("delete file " + to + "/" + name);
+                    filesToDelete.add(name);
+                }
+            }
+        }
+
+        if (dirsToCreate.isEmpty() && filesToWrite.isEmpty() && filesToDelete.isEmpty() &&
+            ownerToChange.isEmpty() && groupToChange.isEmpty() && modeToChange.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("set -euo pipefail\n");
+        sb.append("cd ").append(quote(to)).append('\n');
+        appendCommand(sb, "sudo rm -rf", filesToDelete);
+        appendCommand(sb, "mkdir -p", dirsToCreate);
+        Base64.Encoder encoder = Base64.getMimeEncoder(76, new byte[] {'\n'});
+        for (String name : filesToWrite) {
+            sb.append("base64 -d > ").append(quote(name)).append(" <<'").append(HEREDOC_DELIMITER).append("'\n");
+            sb.append(encoder.encodeToString(localEntries.get(name).content)).append('\n');
+            sb.append(HEREDOC_DELIMITER).append('\n');
+        }
+        // the same as createFile / createDirectory for new entries, and syncFileAttributes for existing ones
+        if (fileOwner != null) {
+            appendCommand(sb, "chown " + fileOwner, newEntries);
+            appendCommand(sb, "sudo chown " + fileOwner, ownerToChange);
+        }
+        if (fileGroup != null) {
+            appendCommand(sb, "chown :" + fileGroup, newEntries);
+            appendCommand(sb, "sudo chown :" + fileGroup, groupToChange);
+        }
+        if (fileMode != null) {
+            appendCommand(sb, "chmod " + fileMode, newEntries);
+            appendCommand(sb, "chmod " + fileMode, modeToChange);
+        }
+
+        getRemoteLauncher("bash -s").input(sb.toString().getBytes(Utils.DefaultCharset)).executePrintOutput();
+    }
+
+    /**
+     * walk the source directory, apply the file hooks and compute the hash of the target content
+     */
+    private void collectLocalEntries(FilePath dir, String prefix, Map<String, LocalEntry> entries) throws IOException, InterruptedException {
+        for (FilePath file : filterFilesToSync(dir.list())) {
+            String name = prefix + toTargetFileName(file.getName());
+            if (name.contains("|") || name.contains("\n")) {
+                throw new IllegalArgumentException("currently the file name could not contain '|' or line breaks: " + name);
+            }
+            if (file.isDirectory()) {
+                entries.put(name, new LocalEntry(name, null));
+                collectLocalEntries(file, name + "/", entries);
+            } else {
+                entries.put(name, new LocalEntry(name, toTargetFileContent(file.getRemote(), IO.readBytes(file))));
+            }
+        }
+    }
+
+    /**
+     * fetch type, mode, owner and group of the children of the directory and its synced sub directories,
+     * and md5 of the synced files, in one command
+     */
+    private void fetchRemoteManifest(String dir, Map<String, LocalEntry> localEntries,
+                                     Map<String, StatStruct> stats, Map<String, String> hashes) {
+        // only the children of the synced directories are listed, the same as the stat of dir/* on each level
+        StringBuilder dirs = new StringBuilder(".\n");
+        StringBuilder files = new StringBuilder();
+        for (LocalEntry entry : localEntries.values()) {
+            (entry.content == null ? dirs : files).append("./").append(entry.path).append('\n');
+        }
+
+        StringBuilder sb = new StringBuilder("cd ").append(quote(dir)).append('\n');
+        // sub directories not existing yet are reported by find and skipped,
+        // the failed status is ignored since the script runs with errexit
+        sb.append("xargs -d '\\n' sh -c 'find \"$@\" -mindepth 1 -maxdepth 1 -printf \"%y|%m|%u|%g|%p\\n\"' sh 2>/dev/null <<'")
+            .append(HEREDOC_DELIMITER).append("' || true\n").append(dirs).append(HEREDOC_DELIMITER).append('\n');
+        sb.append("echo '").append(MANIFEST_SEPARATOR).append("'\n");
+        if (files.length() > 0) {
+            // files not existing yet or not being regular files are reported by md5sum and skipped
+            sb.append("xargs -d '\\n' md5sum -- 2>/dev/null <<'")
+                .append(HEREDOC_DELIMITER).append("' || true\n").append(files).append(HEREDOC_DELIMITER).append('\n');
+        }
+
+        boolean hashPart = false;
+        for (String line : Lambda.tokenize(executeShellReturnText(sb.toString(), false), "\n")) {
+            if (MANIFEST_SEPARATOR.equals(line)) {
+                hashPart = true;
+            } else if (hashPart) {
+                // <md5>  ./<path>
+                int i = line.indexOf("  ./");
+                if (i > 0) {
+                    hashes.put(line.substring(i + 4), line.substring(0, i));
+                }
+            } else {
+                List<String> s = Lambda.tokenize(line, "|");
+                if (s.size() < 5 || !s.get(4).startsWith("./")) {
+                    continue;
+                }
+                String path = s.get(4).substring(2);
+                FileType ft;
+                if ("d".equals(s.get(0))) {
+                    ft = FileType.directory;
+                } else if ("f".equals(s.get(0))) {
+                    ft = FileType.file;
+                } else if (localEntries.containsKey(path)) {
+                    throw new UnsupportedFileTypeException(s.get(0), "file " + dir + "/" + path + " could not be synced");
+                } else {
+                    // links, sockets and so on are left untouched if they are not synced
+                    continue;
+                }
+                StatStruct ss = new StatStruct();
+                ss.setExists(true);
+                ss.setPath(dir + "/" + path);
+                ss.setType(ft);
+                ss.setMode(s.get(1));
+                ss.setOwner(s.get(2));
+                ss.setGroup(s.get(3));
+                stats.put(path, ss);
+            }
+        }
+    }
+
+    /**
+     * fetch the old content of the files to update in one command, and print their diffs
+     */
+    private void logFileDiffs(String dir, List<String> files, Map<String, LocalEntry> entries) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("cd ").append(quote(dir)).append('\n');
+        for (String name : files) {
+            sb.append("base64 -w0 ").append(quote(name)).append("; echo\n");
+        }
+        List<String> lines = Arrays.asList(executeShellReturnText(sb.toString(), false).split("\n", -1));
+        for (int i = 0; i < files.size(); i++) {
+            byte[] oldBytes = i < lines.size() ? Base64.getDecoder().decode(lines.get(i).trim()) : new byte[0];
+            String diff = Utils.diff(oldBytes, entries.get(files.get(i)).content);
+            getScript().info("update file %s, diff: \n%s", dir + "/" + files.get(i), diff);
+        }
+    }
+
+    private static boolean isHidden(String path) {
+        return path.substring(path.lastIndexOf('/') + 1).startsWith(".");
+    }
+
+    private static boolean isInDeletedFolder(String name, List<String> deleted) {
+        for (String d : deleted) {
+            if (name.startsWith(d + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendCommand(StringBuilder sb, String command, List<String> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        sb.append(command);
+        for (String file : files) {
+            sb.append(' ').append(quote(file));
+        }
+        sb.append('\n');
+    }
+
+    private static String quote(String s) {
+        return "'" + s.replace("'", "'\\''") + "'";
+    }
+
     private void createFile(String file) {
         getScript().info("create file " + file);
         List<String> cs = new ArrayList<>();
@@ -366,6 +620,14 @@ public class FileStep extends AbstractFileStep {
             return this;
         }
 
+        /**
+         * use the manifest based sync for directories on linux hosts, true by default
+         */
+        public DslContext manifestSync(boolean value) {
+            step.manifestSync = value;
+            return this;
+        }
+
         public DslContext withJinja() {
             step.withJinja = true;
             return this;
@@ -377,6 +639,24 @@ public class FileStep extends AbstractFileStep {
         }
     }
 
+    private static class LocalEntry {
+        /**
+         * relative path of the target file
+         */
+        final String path;
+        /**
+         * content of the target file, null for directories
+         */
+        final byte[] content;
+        final String hash;
+
+        LocalEntry(String path, byte[] content) {
+            this.path = path;
+            this.content = content;
+            this.hash = content == null ? null : new String(Hex.encodeHex(DigestUtils.md5(content)));
+        }
+    }
+
     private static class DecryptFileHook extends FileHook {
         final EncryptionUtils encryptionUtils;
 
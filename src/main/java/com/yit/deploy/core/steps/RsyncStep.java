@@ -5,6 +5,7 @@ import com.yit.deploy.core.model.ProcessLauncher;
 import com.yit.deploy.core.global.resource.Resources;
 import com.yit.deploy.core.model.ConnectionChannel;
 import com.yit.deploy.core.model.Host;
+import com.yit.deploy.core.model.SshConnections;
 import com.yit.deploy.core.function.Closures;
 import com.yit.deploy.core.model.StatStruct;
 import groovy.lang.Closure;
@@ -123,9 +124,13 @@ public class RsyncStep extends AbstractStep {
 
     private void transferSimple(Host sourceHost, String sourceFile, Host targetHost, String targetFile) {
         Host h = isRemoteHost(sourceHost) ? sourceHost : targetHost;
+        if (SshConnections.isEnabled()) {
+            // the control path directory is created along with the master, rsync could not start ssh without it
+            SshConnections.prepareMaster(h, getScript());
+        }
         Resources.ssh.acquire(h.getName());
         try {
-            String shell = String.format("rsync -e 'ssh -o StrictHostKeyChecking=no -p %d' %s '%s' '%s'", h.getPort(), String.join(" ", options), getRsyncFile(sourceHost, sourceFile), getRsyncFile(targetHost, targetFile));
+            String shell = String.format("rsync -e '%s' %s '%s' '%s'", SshConnections.rsyncRemoteShell(h), String.join(" ", options), getRsyncFile(sourceHost, sourceFile), getRsyncFile(targetHost, targetFile));
             new ProcessLauncher().script(getScript()).bash(shell).executePrintOutput();
         } finally {
             Resources.ssh.release(h.getName());
@@ -0,0 +1,103 @@
+package com.yit.deploy.core.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * condition queues of the config locks, one per config key.
+ * threads waiting for a config lock are woken up once the lock is released in this process,
+ * locks released by other processes are not signaled, so the waiters still check the storage periodically.
+ */
+class ConfigLockQueue {
+
+    /**
+     * config key -> waiters, entries are never removed since the number of config keys is limited
+     */
+    private final Map<String, Waiters> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    Waiters get(String configKey) {
+        return queues.computeIfAbsent(configKey, k -> new Waiters());
+    }
+
+    /**
+     * wake up all threads waiting for the config
+     */
+    void signal(String configKey) {
+        Waiters waiters = queues.get(configKey);
+        if (waiters != null) {
+            waiters.signal();
+        }
+    }
+
+    /**
+     * record the time spent on waiting for a config lock
+     */
+    void recordWait(long nanos, boolean timeout) {
+        waits.incrementAndGet();
+        waitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        if (timeout) {
+            timeouts.incrementAndGet();
+        }
+    }
+
+    ConfigLockStats getStats() {
+        long count = waits.get();
+        return new ConfigLockStats(
+            count,
+            TimeUnit.NANOSECONDS.toMillis(waitNanos.get()),
+            TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+            timeouts.get(),
+            waiting.get());
+    }
+
+    class Waiters {
+        /**
+         * increased once the lock is released, so that a release happened between checking the lock
+         * and starting to wait is not missed
+         */
+        private long version;
+
+        synchronized long version() {
+            return version;
+        }
+
+        /**
+         * wait until the lock is released after the version is observed, or the timeout elapses
+         *
+         * @param observed version observed before checking the lock
+         * @param millis max milliseconds to wait
+         * @return true if woken up by a release, false if timeout
+         */
+        synchronized boolean await(long observed, long millis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            waiting.incrementAndGet();
+            try {
+                while (version == observed) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+                return true;
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        synchronized void signal() {
+            version++;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.yit.deploy.core.storage;
+
+/**
+ * time spent on waiting for config locks in this process
+ */
+public class ConfigLockStats {
+    private final long waitCount;
+    private final long totalWaitMillis;
+    private final long maxWaitMillis;
+    private final long timeoutCount;
+    private final int waitingCount;
+
+    public ConfigLockStats(long waitCount, long totalWaitMillis, long maxWaitMillis, long timeoutCount, int waitingCount) {
+        this.waitCount = waitCount;
+        this.totalWaitMillis = totalWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.timeoutCount = timeoutCount;
+        this.waitingCount = waitingCount;
+    }
+
+    /**
+     * @return number of lock acquisitions (or reads) which had to wait
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    public long getAverageWaitMillis() {
+        return waitCount == 0 ? 0 : totalWaitMillis / waitCount;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return number of threads waiting right now
+     */
+    public int getWaitingCount() {
+        return waitingCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("waits %d (avg %dms, max %dms), timeouts %d, waiting %d",
+            waitCount, getAverageWaitMillis(), maxWaitMillis, timeoutCount, waitingCount);
+    }
+}
@@ -7,7 +7,10 @@ import com.yit.deploy.core.storage.persistent.PersistentDeployStorage;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public abstract class DeployStorage {
@@ -16,6 +19,16 @@ public abstract class DeployStorage {
 
     private static DeployStorage instance;
 
+    /**
+     * max number of ids covered by one range query of commits
+     */
+    private static final long COMMIT_RANGE_SIZE = 10000;
+
+    /**
+     * max time to wait for a config lock, about the same as the total time of the former 100 times of backoff waiting
+     */
+    private static final long CONFIG_LOCK_TIMEOUT_MILLIS = 3600 * 1000;
+
     public static synchronized DeployStorage getInstance(StorageConfig storageConfig) {
         if (instance == null ||
             !instance.storageConfig.equals(storageConfig)) {
@@ -33,18 +46,62 @@ public abstract class DeployStorage {
 
     private final Map<Long, DeployRecordTable> commits = new ConcurrentHashMap<>();
 
+    private final Map<Long, CommitSnapshot> snapshots = new ConcurrentHashMap<>();
+    private volatile Set<Long> snapshotIds;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    private final ConfigLockQueue configLockQueue = new ConfigLockQueue();
+
     protected DeployStorage(StorageConfig storageConfig) {
         this.storageConfig = storageConfig;
     }
 
+    /**
+     * @return utilization of the connection pool, null if the storage has no connection pool
+     */
+    public PoolStats getPoolStats() {
+        return null;
+    }
+
     public abstract List<Branch> loadBranches();
 
     public abstract Branch loadBranch(String branchName);
 
     protected abstract DeployRecordTable loadCommitDetail(long id);
 
+    /**
+     * load the commits with ids in range (after, upTo], without their records
+     */
+    protected abstract List<Commit> loadCommitsInRange(long after, long upTo);
+
+    /**
+     * load the details of the commits, commits not found are absent in the result
+     */
+    protected Map<Long, DeployRecordTable> loadCommitDetails(List<Long> ids) {
+        Map<Long, DeployRecordTable> map = new HashMap<>(ids.size());
+        for (long id : ids) {
+            DeployRecordTable detail = loadCommitDetail(id);
+            if (detail != null) {
+                map.put(id, detail);
+            }
+        }
+        return map;
+    }
+
     protected abstract void saveCommitDetail(String targetBranch, DeployRecordTable recordTable);
 
+    /**
+     * load the ids of all commits having snapshots
+     */
+    protected abstract List<Long> loadSnapshotIds();
+
+    /**
+     * load the snapshot of the commit, return null if not found
+     */
+    protected abstract CommitSnapshot loadSnapshot(long commitId);
+
+    protected abstract void saveSnapshot(CommitSnapshot snapshot);
+
     public abstract void addBuild(BuildRecord record);
 
     public abstract void updateProjectCommitToBuild(BuildRecord record);
@@ -64,6 +121,24 @@ public abstract class DeployStorage {
                                                   Boolean failed,
                                                   String failedType);
 
+    /**
+     * query builds by keyset pagination, ordered by id descending
+     *
+     * @param lastSeenId the smallest id of the previous page, null for the first page
+     * @param pageSize max number of builds in the page
+     * @param countMode how to count the total number of builds matched
+     * @return the page
+     */
+    public abstract KeysetPage<BuildRecord> queryBuilds(Long lastSeenId,
+                                                        int pageSize,
+                                                        String jobName,
+                                                        String envName,
+                                                        String projectName,
+                                                        Boolean finished,
+                                                        Boolean failed,
+                                                        String failedType,
+                                                        CountMode countMode);
+
     public List<DeployRecordTable> getLatestCommits(long from) {
         return getLatestCommits(from, this.storageConfig.defaultBranch);
     }
@@ -86,13 +161,82 @@ public abstract class DeployStorage {
         return getCommits(branch.getHead(), start);
     }
 
+    /**
+     * get all commits from 'start' (exclude) to 'from' (include).
+     * if start is 0, the commits before the latest snapshot are replaced by the segments of the snapshot,
+     * and a new snapshot is compacted in background if there are too many commits after the snapshot.
+     */
     public List<DeployRecordTable> getCommits(long from, long start) {
-        LinkedList<DeployRecordTable> list = new LinkedList<>();
+        List<DeployRecordTable> list = walkCommits(from, start);
+        if (start == 0 && storageConfig.snapshotInterval > 0 && list.size() > storageConfig.snapshotInterval) {
+            // count the commits after the snapshot, the last segment of a snapshot is marked by the snapshot commit
+            int loaded = 0;
+            for (ListIterator<DeployRecordTable> iter = list.listIterator(list.size());
+                 iter.hasPrevious() && !snapshots.containsKey(iter.previous().getCommit().getId());) {
+                loaded++;
+            }
+            if (loaded > storageConfig.snapshotInterval) {
+                scheduleCompaction(from);
+            }
+        }
+        return list;
+    }
+
+    private List<DeployRecordTable> walkCommits(long from, long start) {
+        Set<Long> snapshotIds = start == 0 && storageConfig.snapshotInterval > 0 ? getSnapshotIds() : Collections.emptySet();
+        List<Commit> chain = resolveChain(from, start, Integer.MAX_VALUE, snapshotIds);
+        LinkedList<DeployRecordTable> list = new LinkedList<>(loadCommitChain(chain));
+
+        Long next = chain.isEmpty() ? from : chain.get(chain.size() - 1).getParentId();
+        if (next != null && snapshotIds.contains(next)) {
+            CommitSnapshot snapshot = getSnapshot(next);
+            if (snapshot == null) {
+                // removed by others, walk through it
+                snapshotIds.remove(next);
+                return walkCommits(from, start);
+            }
+            list.addAll(0, snapshot.getSegments());
+        }
+
+        return list;
+    }
+
+    /**
+     * find the commits from 'from' (include) back to 'start' (exclude) or any of the stop ids (exclude),
+     * the commits are loaded by ranges of ids, since a parent always has a smaller id than its children.
+     *
+     * @return commits in the order from the newest to the oldest
+     */
+    private List<Commit> resolveChain(long from, long start, int limit, Set<Long> stopIds) {
+        List<Commit> chain = new ArrayList<>();
+        Map<Long, Commit> loaded = new HashMap<>();
+
+        for (long id = from; id != start && chain.size() < limit && !stopIds.contains(id);) {
+            Commit commit;
+            DeployRecordTable cache = commits.get(id);
+            if (cache != null) {
+                commit = cache.getCommit();
+            } else {
+                commit = loaded.get(id);
+                if (commit == null) {
+                    long after = Math.max(start, id - COMMIT_RANGE_SIZE);
+                    for (long stopId : stopIds) {
+                        if (stopId < id && stopId > after) {
+                            after = stopId;
+                        }
+                    }
+                    for (Commit c : loadCommitsInRange(after, id)) {
+                        loaded.put(c.getId(), c);
+                    }
+                    commit = loaded.get(id);
+                }
+                if (commit == null) {
+                    throw new IllegalConfigException("invalid commit id " + id);
+                }
+            }
 
-        for (long id = from; id != start;) {
-            DeployRecordTable detail = loadCommit(list, id);
-            list.addFirst(detail);
-            Long parentId = detail.getCommit().getParentId();
+            chain.add(commit);
+            Long parentId = commit.getParentId();
 
             if (parentId == null) {
                 if (start == 0) {
@@ -105,43 +249,125 @@ public abstract class DeployStorage {
             id = parentId;
         }
 
-        return list;
+        return chain;
     }
 
-    public List<DeployRecordTable> loadCommits(long from, int count) {
-        LinkedList<DeployRecordTable> list = new LinkedList<>();
-
-        for (long id = from; count-- > 0;) {
-            DeployRecordTable detail = loadCommit(list, id);
-            list.addFirst(detail);
-            Long parentId = detail.getCommit().getParentId();
-            if (parentId == null) {
-                break;
+    /**
+     * load the details of the commits at once
+     *
+     * @param chain commits from the newest to the oldest
+     * @return details from the oldest to the newest
+     */
+    private List<DeployRecordTable> loadCommitChain(List<Commit> chain) {
+        List<Long> missing = new ArrayList<>();
+        for (Commit commit : chain) {
+            if (!commits.containsKey(commit.getId())) {
+                missing.add(commit.getId());
             }
+        }
 
-            id = parentId;
+        if (!missing.isEmpty()) {
+            // in some cases, same commit detail may be loaded more than once,
+            // but is OK, deal to the readonly behavior of the commits
+            commits.putAll(loadCommitDetails(missing));
         }
 
+        List<DeployRecordTable> list = new ArrayList<>(chain.size());
+        for (Commit commit : chain) {
+            DeployRecordTable detail = commits.get(commit.getId());
+            if (detail == null) {
+                throw new IllegalConfigException("invalid commit id " + commit.getId());
+            }
+            list.add(detail);
+        }
+        Collections.reverse(list);
         return list;
     }
 
-    private DeployRecordTable loadCommit(LinkedList<DeployRecordTable> list, long id) {
-        DeployRecordTable cache = commits.get(id);
-        if (cache != null) {
-            return cache;
+    /**
+     * materialize the snapshot of the head of the branch
+     *
+     * @param branchName branch name, default branch if empty
+     * @return the snapshot, null if the branch does not exist
+     */
+    public CommitSnapshot compactSnapshot(String branchName) {
+        if (branchName == null || branchName.isEmpty()) {
+            branchName = storageConfig.defaultBranch;
+        }
+        Branch branch = loadBranch(branchName);
+        if (branch == null) {
+            return null;
+        }
+        return compactSnapshot(branch.getHead());
+    }
+
+    /**
+     * materialize the snapshot of the commit, based on the latest snapshot before it
+     *
+     * @param commitId commit id
+     * @return the snapshot
+     */
+    public CommitSnapshot compactSnapshot(long commitId) {
+        CommitSnapshot snapshot = snapshots.get(commitId);
+        if (snapshot != null) {
+            return snapshot;
         }
 
-        // in some cases, same commit detail may be executed more than once,
-        // but is OK, deal to the readonly behavior of the commits
-        DeployRecordTable detail = loadCommitDetail(id);
+        snapshot = CommitSnapshot.squash(walkCommits(commitId, 0));
+        saveSnapshot(snapshot);
+        snapshots.put(commitId, snapshot);
+        getSnapshotIds().add(commitId);
+        return snapshot;
+    }
+
+    private void scheduleCompaction(long commitId) {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                compactSnapshot(commitId);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "failed to compact the snapshot of commit " + commitId, e);
+            } finally {
+                compacting.set(false);
+            }
+        }, "deploy-storage-compaction");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private Set<Long> getSnapshotIds() {
+        Set<Long> ids = snapshotIds;
+        if (ids == null) {
+            synchronized (snapshots) {
+                ids = snapshotIds;
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                    ids.addAll(loadSnapshotIds());
+                    snapshotIds = ids;
+                }
+            }
+        }
+        return ids;
+    }
 
-        if (detail == null) {
-            throw new IllegalConfigException("invalid commit id " + id);
+    private CommitSnapshot getSnapshot(long commitId) {
+        CommitSnapshot snapshot = snapshots.get(commitId);
+        if (snapshot != null) {
+            return snapshot;
         }
 
-        commits.put(id, detail);
+        snapshot = loadSnapshot(commitId);
+        if (snapshot != null) {
+            snapshots.put(commitId, snapshot);
+        }
+        return snapshot;
+    }
 
-        return detail;
+    public List<DeployRecordTable> loadCommits(long from, int count) {
+        return loadCommitChain(resolveChain(from, 0, count, Collections.emptySet()));
     }
 
     public void appendCommitDetail(String targetBranch, DeployRecordTable recordTable) {
@@ -157,20 +383,32 @@ public abstract class DeployStorage {
     }
 
     public String getConfigValue(String envName, String projectName, String namespace, String key, String locker) {
-        int no = 0;
-        do {
-            Config config = getConfig(envName, projectName, namespace, key);
+        ConfigLockWait wait = null;
+        try {
+            do {
+                long version = wait == null ? 0 : wait.version();
+                Config config = getConfig(envName, projectName, namespace, key);
 
-            if (config == null) {
-                return null;
-            }
+                if (config == null) {
+                    return null;
+                }
 
-            if (config.getLockedBy() == null || config.getLockedBy().equals(locker)) {
-                return config.getValue();
-            }
+                if (config.getLockedBy() == null || config.getLockedBy().equals(locker)) {
+                    return config.getValue();
+                }
 
-            backoffWaitForConfig(envName, projectName, namespace, key, no++);
-        } while (true);
+                if (wait == null) {
+                    // check again before waiting, since the lock might be released before we start to watch it
+                    wait = new ConfigLockWait(envName, projectName, namespace, key);
+                    continue;
+                }
+                wait.await(version);
+            } while (true);
+        } finally {
+            if (wait != null) {
+                wait.finish();
+            }
+        }
     }
 
     public void updateConfigValue(String envName, String projectName, String namespace, String key, String locker, Function<String, String> f) {
@@ -178,11 +416,25 @@ public abstract class DeployStorage {
 
         String oldValue;
         if (config.getLockedBy() != null && config.getLockedBy().equals(locker)) {
-            oldValue = f.apply(config.getValue());
+            oldValue = config.getValue();
         } else {
-            int no = 0;
-            while (!tryLockConfig(config.getId(), locker)) {
-                backoffWaitForConfig(envName, projectName, namespace, key, no++);
+            ConfigLockWait wait = null;
+            try {
+                do {
+                    long version = wait == null ? 0 : wait.version();
+                    if (tryLockConfig(config.getId(), locker)) {
+                        break;
+                    }
+                    if (wait == null) {
+                        wait = new ConfigLockWait(envName, projectName, namespace, key);
+                        continue;
+                    }
+                    wait.await(version);
+                } while (true);
+            } finally {
+                if (wait != null) {
+                    wait.finish();
+                }
             }
             oldValue = getConfigValue(config.getId());
         }
@@ -194,9 +446,21 @@ public abstract class DeployStorage {
             // 如果获取值失败，config会设置为原来的值
             // 目的为了在任何情况下都能解锁
             setConfigValueAndUnlock(config.getId(), newValue);
+            configLockQueue.signal(getConfigKey(envName, projectName, namespace, key));
         }
     }
 
+    /**
+     * @return time spent on waiting for config locks in this process
+     */
+    public ConfigLockStats getConfigLockStats() {
+        return configLockQueue.getStats();
+    }
+
+    private static String getConfigKey(String envName, String projectName, String namespace, String key) {
+        return envName + "\n" + projectName + "\n" + namespace + "\n" + key;
+    }
+
     /**
      * get the snapshot of the config, lock is ignored
      */
@@ -223,29 +487,66 @@ public abstract class DeployStorage {
      */
     protected abstract void setConfigValueAndUnlock(long configId, String value);
 
-    private void backoffWaitForConfig(String envName, String projectName, String namespace, String key, int no) {
-        if (no < 0) {
-            throw new IllegalArgumentException(String.valueOf(no));
+    /**
+     * waiting for a config lock. the waiter is woken up once the lock is released in this process,
+     * otherwise it checks the lock again after a backoff delay, in case the lock is released by other processes.
+     */
+    private class ConfigLockWait {
+        private final String envName;
+        private final String projectName;
+        private final String namespace;
+        private final String key;
+        private final ConfigLockQueue.Waiters waiters;
+        private final long startNanos = System.nanoTime();
+        private int timeouts;
+        private boolean timeout;
+
+        ConfigLockWait(String envName, String projectName, String namespace, String key) {
+            this.envName = envName;
+            this.projectName = projectName;
+            this.namespace = namespace;
+            this.key = key;
+            this.waiters = configLockQueue.get(getConfigKey(envName, projectName, namespace, key));
         }
 
-        if (no > 100) {
-            throw new BackoffTimeoutException(String.format("backoff wait for config lock " +
-                    "[env = %s, project = %s] %s.%s timeout after %d times waiting",
-                envName, projectName, namespace, key, no));
+        long version() {
+            return waiters.version();
         }
 
-        if (no > 12) {
-            logger.warning(String.format("backoff wait for config lock [env = %s, project = %s] %s.%s after %d times",
-                envName, projectName, namespace, key, no));
-            no = 12;
-        }
+        /**
+         * wait until the lock is released after the version is observed
+         *
+         * @param observed version observed before checking the lock
+         */
+        void await(long observed) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            if (elapsed > CONFIG_LOCK_TIMEOUT_MILLIS) {
+                timeout = true;
+                throw new BackoffTimeoutException(String.format("wait for config lock " +
+                        "[env = %s, project = %s] %s.%s timeout after %d ms",
+                    envName, projectName, namespace, key, elapsed));
+            }
 
-        int ms = (1 << no) * 10;
+            // the delay only grows if no release is signaled, that is, the lock is held by others for a long time
+            int no = timeouts;
+            if (no > 12) {
+                logger.warning(String.format("wait for config lock [env = %s, project = %s] %s.%s for %d ms",
+                    envName, projectName, namespace, key, elapsed));
+                no = 12;
+            }
 
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            try {
+                if (!waiters.await(observed, (1 << no) * 10)) {
+                    timeouts++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for config lock", e);
+            }
+        }
+
+        void finish() {
+            configLockQueue.recordWait(System.nanoTime() - startNanos, timeout);
         }
     }
 }
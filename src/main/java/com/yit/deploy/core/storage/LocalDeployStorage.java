@@ -1,10 +1,13 @@
 package com.yit.deploy.core.storage;
 
-import com.yit.deploy.core.collections.ReverseList;
+import com.yit.deploy.core.function.Lambda;
 import com.yit.deploy.core.records.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class LocalDeployStorage extends DeployStorage {
@@ -17,8 +20,18 @@ public class LocalDeployStorage extends DeployStorage {
      */
     private final Map<String, Branch> branches = new ConcurrentHashMap<>();
     private final Map<Long, DeployRecordTable> recordTables = new ConcurrentHashMap<>();
-    private final Map<Long, BuildRecord> builds = new ConcurrentHashMap<>();
-    private final Map<Long, Config> configs = new HashMap<>();
+    private final Map<Long, CommitSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Long, BuildRecord> builds = new ConcurrentSkipListMap<>();
+    /**
+     * job / env / project name -> ids of its builds, the names of a build never change once added
+     */
+    private final Map<String, NavigableSet<Long>> buildsByJob = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> buildsByEnv = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> buildsByProject = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextConfigId = new AtomicLong(1);
+    private final Map<Long, Config> configs = new ConcurrentHashMap<>();
+    private final Map<ConfigKey, Config> configsByKey = new ConcurrentHashMap<>();
 
     public LocalDeployStorage(StorageConfig config) {
         super(config);
@@ -39,6 +52,18 @@ public class LocalDeployStorage extends DeployStorage {
         return recordTables.get(id);
     }
 
+    @Override
+    protected List<Commit> loadCommitsInRange(long after, long upTo) {
+        List<Commit> list = new ArrayList<>();
+        for (DeployRecordTable table : recordTables.values()) {
+            long id = table.getCommit().getId();
+            if (id > after && id <= upTo) {
+                list.add(table.getCommit());
+            }
+        }
+        return list;
+    }
+
     @Override
     public void saveCommitDetail(String targetBranch, DeployRecordTable recordTable) {
         Commit commit = recordTable.getCommit();
@@ -50,10 +75,34 @@ public class LocalDeployStorage extends DeployStorage {
         });
     }
 
+    @Override
+    protected List<Long> loadSnapshotIds() {
+        return new ArrayList<>(snapshots.keySet());
+    }
+
+    @Override
+    protected CommitSnapshot loadSnapshot(long commitId) {
+        return snapshots.get(commitId);
+    }
+
+    @Override
+    protected void saveSnapshot(CommitSnapshot snapshot) {
+        snapshots.put(snapshot.getCommitId(), snapshot);
+    }
+
     @Override
     public void addBuild(BuildRecord record) {
         record.setId(NEXT_BUILD_ID.getAndIncrement());
         builds.put(record.getId(), record);
+        addToIndex(buildsByJob, record.getJobName(), record.getId());
+        addToIndex(buildsByEnv, record.getEnvName(), record.getId());
+        addToIndex(buildsByProject, record.getProjectName(), record.getId());
+    }
+
+    private static void addToIndex(Map<String, NavigableSet<Long>> index, String name, long id) {
+        if (name != null) {
+            index.computeIfAbsent(name, k -> new ConcurrentSkipListSet<>()).add(id);
+        }
     }
 
     @Override
@@ -79,6 +128,7 @@ public class LocalDeployStorage extends DeployStorage {
         r.setFailed(record.getFailed());
         r.setFailedType(record.getFailedType());
         r.setFailedMessage(record.getFailedMessage());
+        r.setTimingSummary(record.getTimingSummary());
     }
 
     @Override
@@ -88,16 +138,15 @@ public class LocalDeployStorage extends DeployStorage {
 
     @Override
     public BuildRecord getJobLastBuild(String jobName) {
-        long buildId = 0;
-        for (BuildRecord record : builds.values()) {
-            if (Objects.equals(record.getJobName(), jobName) && record.getFinishedTime() != null) {
-                if (record.getId() > buildId) {
-                    buildId = record.getId();
-                }
-            }
+        NavigableSet<Long> ids = jobName == null ? null : buildsByJob.get(jobName);
+        if (ids == null) {
+            return null;
         }
-        if (buildId > 0) {
-            return builds.get(buildId);
+        for (long id : ids.descendingSet()) {
+            BuildRecord record = builds.get(id);
+            if (record != null && record.getFinishedTime() != null) {
+                return record;
+            }
         }
         return null;
     }
@@ -111,39 +160,82 @@ public class LocalDeployStorage extends DeployStorage {
                                          Boolean finished,
                                          Boolean failed,
                                          String failedType) {
-        List<BuildRecord> list = new ArrayList<>();
-        for (BuildRecord record : builds.values()) {
-            if (jobName != null && !jobName.equals(record.getJobName()) ||
-                envName != null && !envName.equals(record.getEnvName()) ||
-                projectName != null && !projectName.equals(record.getProjectName()) ||
-                finished != null && finished == (record.getFinishedTime() == null) ||
-                failed != null && !Objects.equals(failed, record.getFailed()) ||
-                failedType != null && !failedType.equals(record.getFailedType())) {
-                continue;
+        int from = pageIndex * pageSize;
+        List<BuildRecord> data = new ArrayList<>(pageSize);
+        int count = 0;
+        for (BuildRecord record : filterBuilds(null, jobName, envName, projectName, finished, failed, failedType)) {
+            if (count >= from && data.size() < pageSize) {
+                data.add(record);
             }
+            count++;
+        }
+        return new Page<>(pageIndex, pageSize, count, data);
+    }
 
-            list.add(record);
+    @Override
+    public KeysetPage<BuildRecord> queryBuilds(Long lastSeenId,
+                                               int pageSize,
+                                               String jobName,
+                                               String envName,
+                                               String projectName,
+                                               Boolean finished,
+                                               Boolean failed,
+                                               String failedType,
+                                               CountMode countMode) {
+        List<BuildRecord> data = new ArrayList<>(pageSize);
+        Long nextId = null;
+        for (BuildRecord record : filterBuilds(lastSeenId, jobName, envName, projectName, finished, failed, failedType)) {
+            if (data.size() >= pageSize) {
+                // there is a build after the page
+                nextId = data.get(data.size() - 1).getId();
+                break;
+            }
+            data.add(record);
         }
 
-        list.sort(Comparator.comparingLong(BuildRecord::getId));
-        List<BuildRecord> data = new ReverseList<>(list).subList(pageIndex * pageIndex, (pageIndex + 1) * pageSize);
-        return new Page<>(pageIndex, pageSize, list.size(), data);
+        long totalCount = -1;
+        if (countMode != CountMode.none) {
+            totalCount = 0;
+            for (BuildRecord ignored : filterBuilds(null, jobName, envName, projectName, finished, failed, failedType)) {
+                totalCount++;
+            }
+        }
+        return new KeysetPage<>(pageSize, data, nextId, totalCount, countMode != CountMode.none);
     }
 
     /**
-     * get the snapshot of the config, lock is ignored
+     * iterate the builds matched in id descending order, only the builds in the most selective index are visited
      *
+     * @param beforeId only the builds with smaller ids are matched, null to match all
      */
-    private Config getConfig0(String envName, String projectName, String namespace, String key) {
-        for (Config config : configs.values()) {
-            if (Objects.equals(config.getEnvName(), envName) &&
-                Objects.equals(config.getProjectName(), projectName) &&
-                Objects.equals(config.getNamespace(), namespace) &&
-                Objects.equals(config.getKey(), key)) {
-                return config;
-            }
+    private Iterable<BuildRecord> filterBuilds(Long beforeId,
+                                               String jobName,
+                                               String envName,
+                                               String projectName,
+                                               Boolean finished,
+                                               Boolean failed,
+                                               String failedType) {
+        // a job belongs to one env and one project, and a project has less builds than an env in most cases
+        NavigableSet<Long> ids;
+        if (jobName != null) {
+            ids = buildsByJob.getOrDefault(jobName, Collections.emptyNavigableSet());
+        } else if (projectName != null) {
+            ids = buildsByProject.getOrDefault(projectName, Collections.emptyNavigableSet());
+        } else if (envName != null) {
+            ids = buildsByEnv.getOrDefault(envName, Collections.emptyNavigableSet());
+        } else {
+            ids = builds.keySet();
         }
-        return null;
+        NavigableSet<Long> candidates = (beforeId == null ? ids : ids.headSet(beforeId, false)).descendingSet();
+
+        return () -> Lambda.filter(Lambda.map(candidates.iterator(), builds::get), record ->
+            record != null &&
+            (jobName == null || jobName.equals(record.getJobName())) &&
+            (envName == null || envName.equals(record.getEnvName())) &&
+            (projectName == null || projectName.equals(record.getProjectName())) &&
+            (finished == null || finished != (record.getFinishedTime() == null)) &&
+            (failed == null || Objects.equals(failed, record.getFailed())) &&
+            (failedType == null || failedType.equals(record.getFailedType())));
     }
 
     /**
@@ -152,9 +244,7 @@ public class LocalDeployStorage extends DeployStorage {
      */
     @Override
     protected Config getConfig(String envName, String projectName, String namespace, String key) {
-        synchronized (configs) {
-            return getConfig0(envName, projectName, namespace, key);
-        }
+        return configsByKey.get(new ConfigKey(envName, projectName, namespace, key));
     }
 
     /**
@@ -163,22 +253,16 @@ public class LocalDeployStorage extends DeployStorage {
      */
     @Override
     protected Config getOrCreateConfig(String envName, String projectName, String namespace, String key) {
-        synchronized (configs) {
-            Config config = getConfig0(envName, projectName, namespace, key);
-            if (config != null) {
-                return config;
-            }
-
+        return configsByKey.computeIfAbsent(new ConfigKey(envName, projectName, namespace, key), k -> {
             Config newConfig = new Config();
-            newConfig.setId(configs.size() + 1);
+            newConfig.setId(nextConfigId.getAndIncrement());
             newConfig.setEnvName(envName);
             newConfig.setProjectName(projectName);
             newConfig.setNamespace(namespace);
             newConfig.setKey(key);
             configs.put(newConfig.getId(), newConfig);
-
             return newConfig;
-        }
+        });
     }
 
     /**
@@ -187,11 +271,8 @@ public class LocalDeployStorage extends DeployStorage {
      */
     @Override
     protected boolean tryLockConfig(long configId, String locker) {
-        synchronized (configs) {
-            Config config = configs.get(configId);
-            if (config == null) {
-                throw new IllegalArgumentException("config id " + configId + " does not exist");
-            }
+        Config config = getConfigById(configId);
+        synchronized (config) {
             if (config.getLockedBy() == null) {
                 config.setLockedBy(locker);
                 config.setLockedTime(new Date());
@@ -207,11 +288,8 @@ public class LocalDeployStorage extends DeployStorage {
      */
     @Override
     protected String getConfigValue(long configId) {
-        synchronized (configs) {
-            Config config = configs.get(configId);
-            if (config == null) {
-                throw new IllegalArgumentException("config id " + configId + " does not exist");
-            }
+        Config config = getConfigById(configId);
+        synchronized (config) {
             return config.getValue();
         }
     }
@@ -221,14 +299,53 @@ public class LocalDeployStorage extends DeployStorage {
      */
     @Override
     protected void setConfigValueAndUnlock(long configId, String value) {
-        synchronized (configs) {
-            Config config = configs.get(configId);
-            if (config == null) {
-                throw new IllegalArgumentException("config id " + configId + " does not exist");
-            }
+        Config config = getConfigById(configId);
+        synchronized (config) {
             config.setValue(value);
             config.setLockedBy(null);
             config.setLockedTime(null);
         }
     }
+
+    private Config getConfigById(long configId) {
+        Config config = configs.get(configId);
+        if (config == null) {
+            throw new IllegalArgumentException("config id " + configId + " does not exist");
+        }
+        return config;
+    }
+
+    /**
+     * (env, project, namespace, key) of a config, env and project may be null
+     */
+    private static class ConfigKey {
+        private final String envName;
+        private final String projectName;
+        private final String namespace;
+        private final String key;
+
+        ConfigKey(String envName, String projectName, String namespace, String key) {
+            this.envName = envName;
+            this.projectName = projectName;
+            this.namespace = namespace;
+            this.key = key;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(envName, projectName, namespace, key);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ConfigKey) {
+                ConfigKey ck = (ConfigKey) obj;
+                return Objects.equals(envName, ck.envName) &&
+                    Objects.equals(projectName, ck.projectName) &&
+                    Objects.equals(namespace, ck.namespace) &&
+                    Objects.equals(key, ck.key);
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package com.yit.deploy.core.storage;
+
+import java.util.Objects;
+
+/**
+ * connection pool settings of the persistent storage
+ */
+public class PoolConfig {
+
+    public static final PoolConfig DEFAULT = new PoolConfig(60, 20, 20000, "SELECT 1", 60000, 250);
+
+    /**
+     * max number of connections in use at the same time
+     */
+    public final int maxActive;
+    /**
+     * max number of idle connections kept in the pool
+     */
+    public final int maxIdle;
+    /**
+     * how long (in milliseconds) to wait for a connection before logging the status of the pool and retrying
+     */
+    public final int maxWaitMillis;
+    /**
+     * query to validate a connection before it is used, null to disable validation
+     */
+    public final String validationQuery;
+    /**
+     * only validate the connections which have been idle for such a long time (in milliseconds)
+     */
+    public final int validationIdleMillis;
+    /**
+     * number of prepared statements cached by the driver per connection, 0 to disable the cache
+     */
+    public final int statementCacheSize;
+
+    public PoolConfig(int maxActive,
+                      int maxIdle,
+                      int maxWaitMillis,
+                      String validationQuery,
+                      int validationIdleMillis,
+                      int statementCacheSize) {
+        if (maxActive <= 0 || maxIdle < 0 || maxWaitMillis <= 0 || validationIdleMillis < 0 || statementCacheSize < 0) {
+            throw new IllegalArgumentException("invalid pool config");
+        }
+        this.maxActive = maxActive;
+        this.maxIdle = Math.min(maxIdle, maxActive);
+        this.maxWaitMillis = maxWaitMillis;
+        this.validationQuery = validationQuery;
+        this.validationIdleMillis = validationIdleMillis;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxActive, maxIdle, maxWaitMillis, validationQuery, validationIdleMillis, statementCacheSize);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof PoolConfig) {
+            PoolConfig pc = (PoolConfig) obj;
+            return maxActive == pc.maxActive &&
+                maxIdle == pc.maxIdle &&
+                maxWaitMillis == pc.maxWaitMillis &&
+                Objects.equals(validationQuery, pc.validationQuery) &&
+                validationIdleMillis == pc.validationIdleMillis &&
+                statementCacheSize == pc.statementCacheSize;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package com.yit.deploy.core.storage;
+
+/**
+ * utilization of the connection pool of the storage
+ */
+public class PoolStats {
+    private final int maxActive;
+    private final int activeCount;
+    private final int idleCount;
+    private final long requestCount;
+    private final long averageRequestMillis;
+    private final long hadToWaitCount;
+    private final long averageWaitMillis;
+    private final long badConnectionCount;
+    private final long claimedOverdueCount;
+
+    public PoolStats(int maxActive,
+                     int activeCount,
+                     int idleCount,
+                     long requestCount,
+                     long averageRequestMillis,
+                     long hadToWaitCount,
+                     long averageWaitMillis,
+                     long badConnectionCount,
+                     long claimedOverdueCount) {
+        this.maxActive = maxActive;
+        this.activeCount = activeCount;
+        this.idleCount = idleCount;
+        this.requestCount = requestCount;
+        this.averageRequestMillis = averageRequestMillis;
+        this.hadToWaitCount = hadToWaitCount;
+        this.averageWaitMillis = averageWaitMillis;
+        this.badConnectionCount = badConnectionCount;
+        this.claimedOverdueCount = claimedOverdueCount;
+    }
+
+    /**
+     * @return ratio of the connections in use to the max active connections
+     */
+    public double getUtilization() {
+        return maxActive == 0 ? 0 : (double) activeCount / maxActive;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * @return number of connections handed out since the pool is created
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getAverageRequestMillis() {
+        return averageRequestMillis;
+    }
+
+    /**
+     * @return number of requests which had to wait for a free connection
+     */
+    public long getHadToWaitCount() {
+        return hadToWaitCount;
+    }
+
+    public long getAverageWaitMillis() {
+        return averageWaitMillis;
+    }
+
+    /**
+     * @return number of connections failed in validation
+     */
+    public long getBadConnectionCount() {
+        return badConnectionCount;
+    }
+
+    /**
+     * @return number of connections reclaimed since they are held for too long
+     */
+    public long getClaimedOverdueCount() {
+        return claimedOverdueCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("active %d/%d, idle %d, requests %d (avg %dms), waited %d (avg %dms), bad %d, overdue %d",
+            activeCount, maxActive, idleCount, requestCount, averageRequestMillis,
+            hadToWaitCount, averageWaitMillis, badConnectionCount, claimedOverdueCount);
+    }
+}
@@ -3,28 +3,72 @@ package com.yit.deploy.core.storage;
 import java.util.Objects;
 
 public class StorageConfig {
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 200;
+    public static final int DEFAULT_WRITE_BATCH_SIZE = 500;
+
     public final String url;
     public final String username;
     public final String password;
     public final String defaultBranch;
+    /**
+     * a snapshot is materialized once more than such number of commits are found after the latest snapshot,
+     * 0 to disable snapshots
+     */
+    public final int snapshotInterval;
+    /**
+     * max number of records written by one insert statement
+     */
+    public final int writeBatchSize;
+    /**
+     * connection pool of the persistent storage
+     */
+    public final PoolConfig pool;
 
     public StorageConfig() {
-        this.url = null;
-        this.username = null;
-        this.password = null;
-        this.defaultBranch = null;
+        this(null, null, null, null);
     }
 
     public StorageConfig(String url, String username, String password, String defaultBranch) {
+        this(url, username, password, defaultBranch, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_WRITE_BATCH_SIZE, PoolConfig.DEFAULT);
+    }
+
+    private StorageConfig(String url,
+                          String username,
+                          String password,
+                          String defaultBranch,
+                          int snapshotInterval,
+                          int writeBatchSize,
+                          PoolConfig pool) {
         this.url = url;
         this.username = username;
         this.password = password;
         this.defaultBranch = defaultBranch;
+        this.snapshotInterval = snapshotInterval;
+        this.writeBatchSize = writeBatchSize;
+        this.pool = pool;
+    }
+
+    public StorageConfig withSnapshotInterval(int snapshotInterval) {
+        return new StorageConfig(url, username, password, defaultBranch, snapshotInterval, writeBatchSize, pool);
+    }
+
+    public StorageConfig withWriteBatchSize(int writeBatchSize) {
+        if (writeBatchSize <= 0) {
+            throw new IllegalArgumentException("writeBatchSize must be positive");
+        }
+        return new StorageConfig(url, username, password, defaultBranch, snapshotInterval, writeBatchSize, pool);
+    }
+
+    public StorageConfig withPool(PoolConfig pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException("pool");
+        }
+        return new StorageConfig(url, username, password, defaultBranch, snapshotInterval, writeBatchSize, pool);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(url, username, password, defaultBranch);
+        return Objects.hash(url, username, password, defaultBranch, snapshotInterval, writeBatchSize, pool);
     }
 
     @Override
@@ -34,7 +78,10 @@ public class StorageConfig {
             return Objects.equals(url, sc.url) &&
                 Objects.equals(username, sc.username) &&
                 Objects.equals(password, sc.password) &&
-                Objects.equals(defaultBranch, sc.defaultBranch);
+                Objects.equals(defaultBranch, sc.defaultBranch) &&
+                snapshotInterval == sc.snapshotInterval &&
+                writeBatchSize == sc.writeBatchSize &&
+                Objects.equals(pool, sc.pool);
         }
         return false;
     }
@@ -1,6 +1,7 @@
 package com.yit.deploy.core.storage.persistent;
 
 import com.yit.deploy.core.records.BuildRecord;
+import org.apache.ibatis.annotations.Param;
 
 import java.util.List;
 
@@ -15,19 +16,38 @@ public interface BuildMapper {
 
     BuildRecord getJobLastBuild(String jobName);
 
-    List<BuildRecord> queryBuilds(long from,
-                                  long to,
-                                  String jobName,
-                                  String envName,
-                                  String projectName,
-                                  Boolean finished,
-                                  Boolean failed,
-                                  String failedType);
-
-    long queryBuildsCount(String jobName,
-                                  String envName,
-                                  String projectName,
-                                  Boolean finished,
-                                  Boolean failed,
-                                  String failedType);
+    List<BuildRecord> queryBuilds(@Param("from") long from,
+                                  @Param("size") long size,
+                                  @Param("jobName") String jobName,
+                                  @Param("envName") String envName,
+                                  @Param("projectName") String projectName,
+                                  @Param("finished") Boolean finished,
+                                  @Param("failed") Boolean failed,
+                                  @Param("failedType") String failedType);
+
+    List<BuildRecord> queryBuildsBefore(@Param("lastSeenId") Long lastSeenId,
+                                        @Param("size") int size,
+                                        @Param("jobName") String jobName,
+                                        @Param("envName") String envName,
+                                        @Param("projectName") String projectName,
+                                        @Param("finished") Boolean finished,
+                                        @Param("failed") Boolean failed,
+                                        @Param("failedType") String failedType);
+
+    long queryBuildsCount(@Param("jobName") String jobName,
+                          @Param("envName") String envName,
+                          @Param("projectName") String projectName,
+                          @Param("finished") Boolean finished,
+                          @Param("failed") Boolean failed,
+                          @Param("failedType") String failedType);
+
+    long queryBuildsCountUpTo(@Param("limit") long limit,
+                              @Param("jobName") String jobName,
+                              @Param("envName") String envName,
+                              @Param("projectName") String projectName,
+                              @Param("finished") Boolean finished,
+                              @Param("failed") Boolean failed,
+                              @Param("failedType") String failedType);
+
+    Long estimateBuildsCount();
 }
@@ -1,28 +1,57 @@
 package com.yit.deploy.core.storage.persistent;
 
+import com.yit.deploy.core.function.FieldGetter;
+import com.yit.deploy.core.function.FieldSetter;
 import com.yit.deploy.core.records.*;
 import com.yit.deploy.core.storage.DeployStorage;
+import com.yit.deploy.core.storage.PoolConfig;
+import com.yit.deploy.core.storage.PoolStats;
 import com.yit.deploy.core.storage.StorageConfig;
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.session.*;
 
+import javax.sql.DataSource;
 import java.io.IOException;
-import java.util.Date;
-import java.util.List;
-import java.util.Properties;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 public class PersistentDeployStorage extends DeployStorage {
 
+    /**
+     * max number of commit ids in one IN clause
+     */
+    private static final int READ_BATCH_SIZE = 1000;
+
+    /**
+     * approximate counting stops at such number of builds
+     */
+    private static final long APPROXIMATE_COUNT_LIMIT = 10000;
+
     private final SqlSessionFactory factory;
+    private final int writeBatchSize;
 
     public PersistentDeployStorage(StorageConfig config) {
         super(config);
+        this.writeBatchSize = config.writeBatchSize;
 
         Properties properties = new Properties();
         properties.setProperty("db.url", config.url);
         properties.setProperty("db.username", config.username);
         properties.setProperty("db.password", config.password);
 
+        PoolConfig pool = config.pool == null ? PoolConfig.DEFAULT : config.pool;
+        properties.setProperty("db.pool.maxActive", String.valueOf(pool.maxActive));
+        properties.setProperty("db.pool.maxIdle", String.valueOf(pool.maxIdle));
+        properties.setProperty("db.pool.maxWait", String.valueOf(pool.maxWaitMillis));
+        properties.setProperty("db.pool.validation", String.valueOf(pool.validationQuery != null));
+        properties.setProperty("db.pool.validationQuery", pool.validationQuery == null ? "NO PING QUERY SET" : pool.validationQuery);
+        properties.setProperty("db.pool.validationIdle", String.valueOf(pool.validationIdleMillis));
+        properties.setProperty("db.pool.statementCache", String.valueOf(pool.statementCacheSize > 0));
+        properties.setProperty("db.pool.statementCacheSize", String.valueOf(pool.statementCacheSize));
+
         SqlSessionFactoryBuilder builder = new SqlSessionFactoryBuilder();
         try {
             this.factory = builder.build(Resources.getResourceAsReader("storage/persistent/mybatis-config.xml"),
@@ -32,6 +61,26 @@ public class PersistentDeployStorage extends DeployStorage {
         }
     }
 
+    @Override
+    public PoolStats getPoolStats() {
+        DataSource dataSource = factory.getConfiguration().getEnvironment().getDataSource();
+        if (!(dataSource instanceof PooledDataSource)) {
+            return null;
+        }
+        PooledDataSource pooled = (PooledDataSource) dataSource;
+        PoolState state = pooled.getPoolState();
+        return new PoolStats(
+            pooled.getPoolMaximumActiveConnections(),
+            state.getActiveConnectionCount(),
+            state.getIdleConnectionCount(),
+            state.getRequestCount(),
+            state.getAverageRequestTime(),
+            state.getHadToWaitCount(),
+            state.getAverageWaitTime(),
+            state.getBadConnectionCount(),
+            state.getClaimedOverdueConnectionCount());
+    }
+
     @Override
     public List<Branch> loadBranches() {
         try (SqlSession session = factory.openSession()) {
@@ -82,6 +131,66 @@ public class PersistentDeployStorage extends DeployStorage {
         }
     }
 
+    @Override
+    protected List<Commit> loadCommitsInRange(long after, long upTo) {
+        try (SqlSession session = factory.openSession()) {
+            RecordTableMapper mapper = session.getMapper(RecordTableMapper.class);
+            return mapper.getCommitsInRange(after, upTo);
+        }
+    }
+
+    /**
+     * load the details of the commits with one query per table, instead of six queries per commit
+     */
+    @Override
+    protected Map<Long, DeployRecordTable> loadCommitDetails(List<Long> ids) {
+        Map<Long, DeployRecordTable> map = new HashMap<>(ids.size());
+        try (SqlSession session = factory.openSession()) {
+            RecordTableMapper mapper = session.getMapper(RecordTableMapper.class);
+            for (int i = 0; i < ids.size(); i += READ_BATCH_SIZE) {
+                List<Long> batch = ids.subList(i, Math.min(i + READ_BATCH_SIZE, ids.size()));
+                for (Commit c : mapper.getCommits(batch)) {
+                    DeployRecordTable table = new DeployRecordTable();
+                    table.setCommit(c);
+                    map.put(c.getId(), table);
+                }
+                groupByCommit(mapper.getEnvironmentsOf(batch), EnvironmentRecord::getCommitId, map,
+                    DeployRecordTable::getEnvs, DeployRecordTable::setEnvs);
+                groupByCommit(mapper.getHostsOf(batch), HostRecord::getCommitId, map,
+                    DeployRecordTable::getHosts, DeployRecordTable::setHosts);
+                groupByCommit(mapper.getHostGroupsOf(batch), HostGroupRecord::getCommitId, map,
+                    DeployRecordTable::getHostGroups, DeployRecordTable::setHostGroups);
+                groupByCommit(mapper.getProjectsOf(batch), ProjectRecord::getCommitId, map,
+                    DeployRecordTable::getProjects, DeployRecordTable::setProjects);
+                groupByCommit(mapper.getAssignsOf(batch), Assignment::getCommitId, map,
+                    DeployRecordTable::getAssigns, DeployRecordTable::setAssigns);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * put the records to the tables of their commits, tables without any record of the kind keep null
+     */
+    private static <T> void groupByCommit(List<T> records,
+                                          ToLongFunction<T> getCommitId,
+                                          Map<Long, DeployRecordTable> tables,
+                                          FieldGetter<DeployRecordTable, List<T>> getter,
+                                          FieldSetter<DeployRecordTable, List<T>> setter) {
+        for (T r : records) {
+            DeployRecordTable table = tables.get(getCommitId.applyAsLong(r));
+            if (table == null) {
+                continue;
+            }
+            List<T> list = getter.get(table);
+            if (list == null) {
+                list = new ArrayList<>();
+                setter.set(table, list);
+            }
+            list.add(r);
+        }
+    }
+
     @Override
     public void saveCommitDetail(String targetBranch, DeployRecordTable recordTable) {
         try (SqlSession session = factory.openSession()) {
@@ -103,41 +212,54 @@ public class PersistentDeployStorage extends DeployStorage {
                 mapper.updateBranch(branch);
             }
 
-            if (recordTable.getEnvs() != null) {
-                for (EnvironmentRecord r : recordTable.getEnvs()) {
-                    r.setCommitId(commitId);
-                    mapper.addEnvironment(r);
-                }
-            }
+            // records are inserted in multi-row statements, so that the round trips do not grow with the records
+            insertInBatches(recordTable.getEnvs(), r -> r.setCommitId(commitId), mapper::addEnvironments);
+            insertInBatches(recordTable.getHosts(), r -> r.setCommitId(commitId), mapper::addHosts);
+            insertInBatches(recordTable.getHostGroups(), r -> r.setCommitId(commitId), mapper::addHostGroups);
+            insertInBatches(recordTable.getProjects(), r -> r.setCommitId(commitId), mapper::addProjects);
+            insertInBatches(recordTable.getAssigns(), r -> r.setCommitId(commitId), mapper::addAssigns);
 
-            if (recordTable.getHosts() != null) {
-                for (HostRecord r : recordTable.getHosts()) {
-                    r.setCommitId(commitId);
-                    mapper.addHost(r);
-                }
-            }
+            session.commit();
+        }
+    }
 
-            if (recordTable.getHostGroups() != null) {
-                for (HostGroupRecord r : recordTable.getHostGroups()) {
-                    r.setCommitId(commitId);
-                    mapper.addHostGroup(r);
-                }
-            }
+    /**
+     * insert the records by statements of at most writeBatchSize rows
+     */
+    private <T> void insertInBatches(List<T> records, Consumer<T> prepare, Consumer<List<T>> insert) {
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        for (T r : records) {
+            prepare.accept(r);
+        }
+        for (int i = 0; i < records.size(); i += writeBatchSize) {
+            insert.accept(records.subList(i, Math.min(i + writeBatchSize, records.size())));
+        }
+    }
 
-            if (recordTable.getProjects() != null) {
-                for (ProjectRecord r : recordTable.getProjects()) {
-                    r.setCommitId(commitId);
-                    mapper.addProject(r);
-                }
-            }
+    @Override
+    protected List<Long> loadSnapshotIds() {
+        try (SqlSession session = factory.openSession()) {
+            RecordTableMapper mapper = session.getMapper(RecordTableMapper.class);
+            return mapper.getSnapshotIds();
+        }
+    }
 
-            if (recordTable.getAssigns() != null) {
-                for (Assignment r : recordTable.getAssigns()) {
-                    r.setCommitId(commitId);
-                    mapper.addAssign(r);
-                }
-            }
+    @Override
+    protected CommitSnapshot loadSnapshot(long commitId) {
+        try (SqlSession session = factory.openSession()) {
+            RecordTableMapper mapper = session.getMapper(RecordTableMapper.class);
+            String content = mapper.getSnapshot(commitId);
+            return content == null ? null : CommitSnapshot.fromJson(commitId, content);
+        }
+    }
 
+    @Override
+    protected void saveSnapshot(CommitSnapshot snapshot) {
+        try (SqlSession session = factory.openSession()) {
+            RecordTableMapper mapper = session.getMapper(RecordTableMapper.class);
+            mapper.addSnapshot(snapshot.getCommitId(), snapshot.toJson(), new Date());
             session.commit();
         }
     }
@@ -197,15 +319,63 @@ public class PersistentDeployStorage extends DeployStorage {
         try (SqlSession session = factory.openSession()) {
             BuildMapper mapper = session.getMapper(BuildMapper.class);
             long totalCount = mapper.queryBuildsCount(jobName, envName, projectName, finished, failed, failedType);
-            long from = pageIndex * pageSize;
-            long to = (pageIndex + 1) * pageSize - 1;
-            List<BuildRecord> data = mapper.queryBuilds(from, to, jobName, envName, projectName,
+            long from = (long) pageIndex * pageSize;
+            List<BuildRecord> data = mapper.queryBuilds(from, pageSize, jobName, envName, projectName,
                 finished, failed, failedType);
 
             return new Page<>(pageIndex, pageSize, totalCount, data);
         }
     }
 
+    @Override
+    public KeysetPage<BuildRecord> queryBuilds(Long lastSeenId,
+                                               int pageSize,
+                                               String jobName,
+                                               String envName,
+                                               String projectName,
+                                               Boolean finished,
+                                               Boolean failed,
+                                               String failedType,
+                                               CountMode countMode) {
+        try (SqlSession session = factory.openSession()) {
+            BuildMapper mapper = session.getMapper(BuildMapper.class);
+            // the mapper returns at most one more build than the page size, which tells if there is a next page
+            List<BuildRecord> data = mapper.queryBuildsBefore(lastSeenId, pageSize, jobName, envName, projectName,
+                finished, failed, failedType);
+            Long nextId = null;
+            if (data.size() > pageSize) {
+                data = data.subList(0, pageSize);
+                nextId = data.get(pageSize - 1).getId();
+            }
+
+            long totalCount = -1;
+            boolean countExact = false;
+            switch (countMode) {
+                case exact:
+                    totalCount = mapper.queryBuildsCount(jobName, envName, projectName, finished, failed, failedType);
+                    countExact = true;
+                    break;
+                case approximate:
+                    if (jobName == null && envName == null && projectName == null &&
+                        finished == null && failed == null && failedType == null) {
+                        Long estimated = mapper.estimateBuildsCount();
+                        if (estimated != null) {
+                            totalCount = estimated;
+                            break;
+                        }
+                    }
+                    totalCount = mapper.queryBuildsCountUpTo(APPROXIMATE_COUNT_LIMIT, jobName, envName, projectName,
+                        finished, failed, failedType);
+                    countExact = totalCount < APPROXIMATE_COUNT_LIMIT;
+                    break;
+                default:
+                    break;
+            }
+
+            return new KeysetPage<>(pageSize, data, nextId, totalCount, countExact);
+        }
+    }
+
     /**
      * get the snapshot of the config, lock is ignored
      */
@@ -249,6 +419,7 @@ public class PersistentDeployStorage extends DeployStorage {
     protected boolean tryLockConfig(long configId, String locker) {
         try (SqlSession session = factory.openSession(TransactionIsolationLevel.REPEATABLE_READ)) {
             ConfigMapper mapper = session.getMapper(ConfigMapper.class);
+            // row lock, released on commit, or on rollback when the session is closed
             String lockedBy = mapper.getLockedBy(configId);
 
             if (lockedBy != null) {
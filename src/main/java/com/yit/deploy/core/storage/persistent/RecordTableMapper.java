@@ -1,7 +1,9 @@
 package com.yit.deploy.core.storage.persistent;
 
 import com.yit.deploy.core.records.*;
+import org.apache.ibatis.annotations.Param;
 
+import java.util.Date;
 import java.util.List;
 
 public interface RecordTableMapper {
@@ -21,21 +23,42 @@ public interface RecordTableMapper {
 
     List<Assignment> getAssigns(long commitId);
 
+    List<Commit> getCommitsInRange(@Param("after") long after, @Param("upTo") long upTo);
+
+    List<Commit> getCommits(@Param("ids") List<Long> ids);
+
+    List<EnvironmentRecord> getEnvironmentsOf(@Param("ids") List<Long> commitIds);
+
+    List<HostRecord> getHostsOf(@Param("ids") List<Long> commitIds);
+
+    List<HostGroupRecord> getHostGroupsOf(@Param("ids") List<Long> commitIds);
+
+    List<ProjectRecord> getProjectsOf(@Param("ids") List<Long> commitIds);
+
+    List<Assignment> getAssignsOf(@Param("ids") List<Long> commitIds);
+
     void addCommit(Commit commit);
 
     void addBranch(Branch branch);
 
     void updateBranch(Branch branch);
 
-    void addEnvironment(EnvironmentRecord env);
+    void addEnvironments(@Param("list") List<EnvironmentRecord> envs);
+
+    void addHosts(@Param("list") List<HostRecord> hosts);
+
+    void addHostGroups(@Param("list") List<HostGroupRecord> hostGroups);
 
-    void addHost(HostRecord host);
+    void addProjects(@Param("list") List<ProjectRecord> projects);
 
-    void addHostGroup(HostGroupRecord hg);
+    void addAssigns(@Param("list") List<Assignment> assigns);
 
-    void addProject(ProjectRecord project);
+    List<Long> getSnapshotIds();
 
-    void addAssign(Assignment assign);
+    String getSnapshot(long commitId);
 
+    void addSnapshot(@Param("commitId") long commitId,
+                     @Param("content") String content,
+                     @Param("createdTime") Date createdTime);
 
 }
@@ -84,6 +84,12 @@ CREATE TABLE ASSIGNMENTS (
                            PRIMARY KEY (COMMIT_ID, VARIABLE_KEY)
 );
 
+CREATE TABLE SNAPSHOTS (
+                         COMMIT_ID BIGINT NOT NULL PRIMARY KEY REFERENCES COMMITS(ID),
+                         CONTENT LONGTEXT NOT NULL,
+                         CREATED_TIME DATETIME NOT NULL
+);
+
 CREATE TABLE BUILDS (
                         ID BIGINT AUTO_INCREMENT PRIMARY KEY,
                         PARENT_ID BIGINT NULL REFERENCES BUILDS(ID),
@@ -112,9 +118,18 @@ CREATE TABLE BUILDS (
                         PROJECT_COMMIT_DETAIL VARCHAR(4095) NULL,
                         PROJECT_COMMIT_DATE DATETIME NULL,
 
-                        USER_PARAMETERS text NULL
+                        USER_PARAMETERS text NULL,
+
+                        TIMING_SUMMARY text NULL
 );
 
+-- indexes of the filter columns include the primary key, so that they also serve the keyset pagination by ID
+CREATE INDEX BUILDS_JOB_NAME_INDEX ON BUILDS(JOB_NAME, ID);
+CREATE INDEX BUILDS_ENV_PROJECT_INDEX ON BUILDS(ENV_NAME, PROJECT_NAME, ID);
+CREATE INDEX BUILDS_PROJECT_NAME_INDEX ON BUILDS(PROJECT_NAME, ID);
+CREATE INDEX BUILDS_FAILED_INDEX ON BUILDS(FAILED, FAILED_TYPE, ID);
+CREATE INDEX BUILDS_STARTED_TIME_INDEX ON BUILDS(STARTED_TIME);
+
 CREATE TABLE CONFIG (
     ID BIGINT AUTO_INCREMENT PRIMARY KEY,
     ENV_NAME VARCHAR(63) NULL,
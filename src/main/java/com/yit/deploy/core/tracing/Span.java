@@ -0,0 +1,229 @@
+package com.yit.deploy.core.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * timing of a build, hook, play, host, task or resource acquisition.
+ *
+ * spans started in a thread are nested in the current span of the thread,
+ * use {@link #propagate(Runnable)} to keep the nesting when the work is handed to another thread.
+ * a span must be closed in the thread starting it.
+ */
+public class Span implements AutoCloseable {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    private final Span parent;
+    private final SpanKind kind;
+    private final String name;
+    private final String host;
+
+    private final long startTime;
+    private final long startNanos;
+    private volatile long durationNanos = -1;
+
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicLong resourceWaitNanos = new AtomicLong();
+    private volatile SpanOutcome outcome;
+    private volatile String error;
+
+    private final List<Span> children = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * the current span of the thread before this span is started
+     */
+    private final Span previous;
+
+    private Span(Span parent, SpanKind kind, String name, String host, Span previous) {
+        this.parent = parent;
+        this.kind = kind;
+        this.name = name;
+        this.host = host;
+        this.previous = previous;
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * start a span nested in the current span of the thread, and make it the current one
+     *
+     * @param kind span kind
+     * @param name name of the build, hook, play, task or resource
+     * @param host target host name, null if not related to a host
+     * @return the started span
+     */
+    public static Span start(SpanKind kind, String name, String host) {
+        Span current = CURRENT.get();
+        Span span = new Span(current, kind, name, host == null && current != null ? current.host : host, current);
+        if (current != null) {
+            current.children.add(span);
+        }
+        CURRENT.set(span);
+        return span;
+    }
+
+    public static Span start(SpanKind kind, String name) {
+        return start(kind, name, null);
+    }
+
+    /**
+     * start a span not nested in any other span, such as the span of a build
+     *
+     * @param kind span kind
+     * @param name span name
+     * @return the started span
+     */
+    public static Span startRoot(SpanKind kind, String name) {
+        Span span = new Span(null, kind, name, null, CURRENT.get());
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * @return the current span of the thread, null if not in any span
+     */
+    public static Span current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * make the runnable executed in the current span of this thread, whichever thread runs it
+     *
+     * @param runnable runnable to wrap
+     * @return wrapped runnable
+     */
+    public static Runnable propagate(Runnable runnable) {
+        Span span = CURRENT.get();
+        if (span == null) {
+            return runnable;
+        }
+        return () -> {
+            Span old = CURRENT.get();
+            CURRENT.set(span);
+            try {
+                runnable.run();
+            } finally {
+                CURRENT.set(old);
+            }
+        };
+    }
+
+    /**
+     * mark the span as failed
+     *
+     * @param t the error
+     */
+    public void fail(Throwable t) {
+        outcome = SpanOutcome.failed;
+        error = t == null ? null : t.getClass().getSimpleName() + ": " + t.getMessage();
+    }
+
+    /**
+     * mark the span as exited on purpose
+     */
+    public void exit() {
+        outcome = SpanOutcome.exited;
+    }
+
+    public void retry() {
+        retries.incrementAndGet();
+    }
+
+    public void addResourceWait(long nanos) {
+        resourceWaitNanos.addAndGet(nanos);
+    }
+
+    /**
+     * finish the span, and restore the current span of the thread
+     */
+    @Override
+    public void close() {
+        if (durationNanos >= 0) {
+            return;
+        }
+        durationNanos = System.nanoTime() - startNanos;
+        if (outcome == null) {
+            outcome = SpanOutcome.success;
+        }
+        if (CURRENT.get() == this) {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public Span getParent() {
+        return parent;
+    }
+
+    public SpanKind getKind() {
+        return kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return start time in epoch milliseconds
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return duration in milliseconds, or the elapsed time if the span is not finished yet
+     */
+    public long getDurationMillis() {
+        long d = durationNanos;
+        return TimeUnit.NANOSECONDS.toMillis(d >= 0 ? d : System.nanoTime() - startNanos);
+    }
+
+    public boolean isFinished() {
+        return durationNanos >= 0;
+    }
+
+    public int getRetries() {
+        return retries.get();
+    }
+
+    public long getResourceWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(resourceWaitNanos.get());
+    }
+
+    /**
+     * @return outcome of the span, null if not finished yet
+     */
+    public SpanOutcome getOutcome() {
+        return outcome;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return a snapshot of the child spans
+     */
+    public List<Span> getChildren() {
+        synchronized (children) {
+            return new ArrayList<>(children);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return kind + " [" + name + "]" + (host == null ? "" : "@" + host) + " " + getDurationMillis() + "ms";
+    }
+}
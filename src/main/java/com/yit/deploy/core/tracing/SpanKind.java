@@ -0,0 +1,13 @@
+package com.yit.deploy.core.tracing;
+
+/**
+ * what a span measures
+ */
+public enum SpanKind {
+    build,
+    hook,
+    play,
+    host,
+    task,
+    resource
+}
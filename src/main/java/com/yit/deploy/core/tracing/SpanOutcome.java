@@ -0,0 +1,16 @@
+package com.yit.deploy.core.tracing;
+
+public enum SpanOutcome {
+    /**
+     * finished normally
+     */
+    success,
+    /**
+     * finished with an error
+     */
+    failed,
+    /**
+     * exited on purpose, such as ExitPlayException
+     */
+    exited
+}
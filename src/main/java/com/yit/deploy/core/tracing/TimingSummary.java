@@ -0,0 +1,214 @@
+package com.yit.deploy.core.tracing;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compact summary of the spans of a build, persisted along with the build record.
+ * hooks, plays and hosts are kept one by one, while tasks and resources are aggregated by name,
+ * so that the size does not grow with the number of task executions.
+ */
+public class TimingSummary {
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private long startTime;
+    private long totalMillis;
+    private long resourceWaitMillis;
+
+    /**
+     * hooks, plays and hosts in the order of their start
+     */
+    private List<Entry> spans = new ArrayList<>();
+
+    /**
+     * task name -> aggregated timing
+     */
+    private Map<String, Stat> tasks = new LinkedHashMap<>();
+
+    /**
+     * resource name -> aggregated waiting time
+     */
+    private Map<String, Stat> resources = new LinkedHashMap<>();
+
+    public static TimingSummary of(Span root) {
+        TimingSummary summary = new TimingSummary();
+        summary.startTime = root.getStartTime();
+        summary.totalMillis = root.getDurationMillis();
+        summary.visit(root, null);
+        return summary;
+    }
+
+    private void visit(Span span, String play) {
+        switch (span.getKind()) {
+            case hook:
+            case play:
+            case host:
+                Entry entry = new Entry();
+                entry.kind = span.getKind();
+                entry.name = span.getKind() == SpanKind.host ? play : span.getName();
+                entry.host = span.getKind() == SpanKind.host ? span.getName() : null;
+                entry.offset = span.getStartTime() - startTime;
+                entry.millis = span.getDurationMillis();
+                entry.retries = span.getRetries();
+                entry.waitMillis = span.getResourceWaitMillis();
+                entry.outcome = span.getOutcome();
+                entry.error = span.getError();
+                spans.add(entry);
+                break;
+            case task:
+                tasks.computeIfAbsent(span.getName(), k -> new Stat()).add(span);
+                break;
+            case resource:
+                resources.computeIfAbsent(span.getName(), k -> new Stat()).add(span);
+                resourceWaitMillis += span.getDurationMillis();
+                break;
+            default:
+                break;
+        }
+
+        String p = span.getKind() == SpanKind.play ? span.getName() : play;
+        for (Span child : span.getChildren()) {
+            visit(child, p);
+        }
+    }
+
+    public String toJson() {
+        return GSON.toJson(this);
+    }
+
+    public static TimingSummary fromJson(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        return GSON.fromJson(json, TimingSummary.class);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getResourceWaitMillis() {
+        return resourceWaitMillis;
+    }
+
+    public List<Entry> getSpans() {
+        return spans;
+    }
+
+    public Map<String, Stat> getTasks() {
+        return tasks;
+    }
+
+    public Map<String, Stat> getResources() {
+        return resources;
+    }
+
+    public static class Entry {
+        private SpanKind kind;
+        /**
+         * name of the hook or play, for host spans it is the name of the play
+         */
+        private String name;
+        private String host;
+        /**
+         * milliseconds since the start of the build
+         */
+        private long offset;
+        private long millis;
+        private int retries;
+        private long waitMillis;
+        private SpanOutcome outcome;
+        private String error;
+
+        public SpanKind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        public SpanOutcome getOutcome() {
+            return outcome;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    public static class Stat {
+        private int count;
+        private long totalMillis;
+        private long maxMillis;
+        private int retries;
+        private int failures;
+        private long waitMillis;
+
+        void add(Span span) {
+            long millis = span.getDurationMillis();
+            count++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+            retries += span.getRetries();
+            if (span.getOutcome() == SpanOutcome.failed) {
+                failures++;
+            }
+            waitMillis += span.getResourceWaitMillis();
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        public int getRetries() {
+            return retries;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+    }
+}
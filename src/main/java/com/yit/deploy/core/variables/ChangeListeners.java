@@ -0,0 +1,54 @@
+package com.yit.deploy.core.variables;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * listeners of the changes of a variable table.
+ * listeners are weakly referenced, so that a long living table does not keep the layered tables built upon it.
+ */
+class ChangeListeners {
+
+    private final List<WeakReference<Runnable>> listeners = new ArrayList<>(1);
+    private volatile boolean empty = true;
+
+    synchronized void add(Runnable listener) {
+        prune();
+        listeners.add(new WeakReference<>(listener));
+        empty = false;
+    }
+
+    /**
+     * call the listeners after the table is changed
+     */
+    void fire() {
+        if (empty) {
+            return;
+        }
+        List<Runnable> list;
+        synchronized (this) {
+            prune();
+            list = new ArrayList<>(listeners.size());
+            for (WeakReference<Runnable> ref : listeners) {
+                Runnable listener = ref.get();
+                if (listener != null) {
+                    list.add(listener);
+                }
+            }
+        }
+        for (Runnable listener : list) {
+            listener.run();
+        }
+    }
+
+    private void prune() {
+        for (Iterator<WeakReference<Runnable>> iter = listeners.iterator(); iter.hasNext(); ) {
+            if (iter.next().get() == null) {
+                iter.remove();
+            }
+        }
+        empty = listeners.isEmpty();
+    }
+}
@@ -7,13 +7,38 @@ import com.yit.deploy.core.variables.variable.Variable;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 public class LayeredVariables implements Variables {
 
+    /**
+     * marks a name not found in the compiled view, since concurrent maps do not accept null values
+     */
+    private static final Object NOT_FOUND = new Object();
+
     private final List<Variables> layers = new ArrayList<>();
     private Variables writable;
 
+    private final ChangeListeners listeners = new ChangeListeners();
+    /**
+     * registered to the layers, kept here since the layers only hold it weakly
+     */
+    private final Runnable layerListener = this::invalidate;
+    /**
+     * number of layers which do not report their changes, nothing could be compiled if there is any
+     */
+    private int untrackedLayers;
+    /**
+     * increased once the layers or any of them are changed, after the change is done
+     */
+    private final AtomicLong modifications = new AtomicLong();
+    /**
+     * results of looking up the layers, valid until any layer is changed. null if not compiled yet
+     */
+    private volatile Compiled compiled;
+
     /**
      * check if this variable table is empty
      *
@@ -32,6 +57,18 @@ public class LayeredVariables implements Variables {
         return true;
     }
 
+    /**
+     * register a listener called after any layer is changed or the layers are replaced
+     *
+     * @param listener the listener, weakly referenced
+     * @return true
+     */
+    @Override
+    public boolean addChangeListener(Runnable listener) {
+        listeners.add(listener);
+        return true;
+    }
+
     /**
      * check if the variable with given name is hidden by this variable table,
      * a variable is hidden only if there is a variable with the same name or its parent name
@@ -41,6 +78,14 @@ public class LayeredVariables implements Variables {
      */
     @Override
     public boolean hidden(@Nonnull VariableName name) {
+        Compiled c = compile();
+        if (c != null) {
+            return c.hidden.computeIfAbsent(name, this::hiddenInLayers);
+        }
+        return hiddenInLayers(name);
+    }
+
+    private boolean hiddenInLayers(@Nonnull VariableName name) {
         for (Variables l : layers) {
             if (l.hidden(name)) {
                 return true;
@@ -59,6 +104,20 @@ public class LayeredVariables implements Variables {
     @Nullable
     @Override
     public <T> Variable<T> getWithInvisible(@Nonnull VariableName name) {
+        Compiled c = compile();
+        if (c != null) {
+            Object v = c.variables.computeIfAbsent(name, n -> {
+                Variable<?> found = getInLayers(n);
+                return found == null ? NOT_FOUND : found;
+            });
+            //noinspection unchecked
+            return v == NOT_FOUND ? null : (Variable<T>) v;
+        }
+        return getInLayers(name);
+    }
+
+    @Nullable
+    private <T> Variable<T> getInLayers(@Nonnull VariableName name) {
         for (int i = layers.size() - 1; i >= 0; i--) {
             Variable<T> v = layers.get(i).getWithInvisible(name);
             if (v != null) {
@@ -85,6 +144,15 @@ public class LayeredVariables implements Variables {
             return layers.get(0).fields(name);
         }
 
+        Compiled c = compile();
+        if (c != null) {
+            //noinspection unchecked
+            return (Iterator<Variable<T>>) (Iterator<?>) c.fields(name).iterator();
+        }
+        return fieldsInLayers(name);
+    }
+
+    private <T> Iterator<Variable<T>> fieldsInLayers(@Nonnull VariableName name) {
         return Lambda.iterate(new Supplier<Variable<T>>() {
 
             Iterator<Variable<T>> iter;
@@ -125,6 +193,17 @@ public class LayeredVariables implements Variables {
             return layers.get(0).reverseFields(name);
         }
 
+        Compiled c = compile();
+        if (c != null) {
+            // fields of the layers are visited in the reverse order, and hidden by the same layers
+            List<Variable<?>> list = c.fields(name);
+            ListIterator<Variable<?>> iter = list.listIterator(list.size());
+            return Lambda.iterate(() -> {
+                //noinspection unchecked
+                return iter.hasPrevious() ? (Variable<T>) iter.previous() : null;
+            });
+        }
+
         return Lambda.iterate(new Supplier<Variable<T>>() {
 
             Iterator<Variable<T>> iter;
@@ -163,6 +242,14 @@ public class LayeredVariables implements Variables {
             return layers.get(0).variables();
         }
 
+        Compiled c = compile();
+        if (c != null) {
+            return c.variables().iterator();
+        }
+        return variablesInLayers();
+    }
+
+    private Iterator<Variable> variablesInLayers() {
         return Lambda.iterate(new Supplier<Variable>() {
 
             Iterator<Variable> iter;
@@ -256,6 +343,10 @@ public class LayeredVariables implements Variables {
      */
     public LayeredVariables layer(Variables layer) {
         layers.add(layer);
+        if (!layer.addChangeListener(layerListener)) {
+            untrackedLayers++;
+        }
+        invalidate();
         return this;
     }
 
@@ -263,7 +354,10 @@ public class LayeredVariables implements Variables {
      * clear all layers
      */
     public LayeredVariables clearLayers() {
+        // the listener stays registered in the removed layers, it only drops the compiled view
         layers.clear();
+        untrackedLayers = 0;
+        invalidate();
         return this;
     }
 
@@ -287,6 +381,8 @@ public class LayeredVariables implements Variables {
             throw new UnsupportedOperationException("write operation is not support");
         }
         writable.put(variable);
+        // in case the writable table is not a layer
+        invalidate();
     }
 
     /**
@@ -295,7 +391,9 @@ public class LayeredVariables implements Variables {
     @Override
     public void clear() {
         layers.clear();
+        untrackedLayers = 0;
         writable = null;
+        invalidate();
     }
 
     /**
@@ -307,6 +405,35 @@ public class LayeredVariables implements Variables {
         this.writable = writable;
     }
 
+    /**
+     * drop the compiled view after the layers are changed or replaced, and tell the tables layered upon us
+     */
+    private void invalidate() {
+        modifications.incrementAndGet();
+        compiled = null;
+        listeners.fire();
+    }
+
+    /**
+     * get the compiled view of the current layers.
+     * the layers push their changes to us, so checking the view is valid does not visit the layers
+     *
+     * @return the compiled view, or null if the layers could not be compiled since their changes are not tracked
+     */
+    @Nullable
+    private Compiled compile() {
+        if (untrackedLayers > 0) {
+            return null;
+        }
+        long version = modifications.get();
+        Compiled c = compiled;
+        if (c == null || c.version != version) {
+            // a view created before a change is never used after it, since the change increases the modifications
+            compiled = c = new Compiled(version);
+        }
+        return c;
+    }
+
     private boolean unhidden(@Nonnull VariableName name, int index) {
         for (int i = index; i < layers.size(); i++) {
             if (layers.get(i).hidden(name)) {
@@ -315,4 +442,42 @@ public class LayeredVariables implements Variables {
         }
         return true;
     }
+
+    /**
+     * lookup results and iteration orders of the layers at a modification count, filled on demand.
+     * looking up a name again is a single hash lookup instead of walking all layers,
+     * and iterating is linear instead of checking all higher layers for each variable.
+     */
+    private class Compiled {
+        final long version;
+        /**
+         * name -> variable, or NOT_FOUND
+         */
+        final Map<VariableName, Object> variables = new ConcurrentHashMap<>();
+        final Map<VariableName, Boolean> hidden = new ConcurrentHashMap<>();
+        final Map<VariableName, List<Variable<?>>> fields = new ConcurrentHashMap<>();
+        volatile List<Variable> all;
+
+        Compiled(long version) {
+            this.version = version;
+        }
+
+        List<Variable<?>> fields(VariableName name) {
+            return fields.computeIfAbsent(name, n -> {
+                List<Variable<?>> list = new ArrayList<>();
+                for (Iterator<Variable<Object>> iter = fieldsInLayers(n); iter.hasNext(); ) {
+                    list.add(iter.next());
+                }
+                return Collections.unmodifiableList(list);
+            });
+        }
+
+        List<Variable> variables() {
+            List<Variable> list = all;
+            if (list == null) {
+                all = list = Collections.unmodifiableList(Lambda.asList(variablesInLayers()));
+            }
+            return list;
+        }
+    }
 }
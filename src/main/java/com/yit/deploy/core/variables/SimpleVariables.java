@@ -13,6 +13,7 @@ import java.util.function.Supplier;
 public class SimpleVariables implements Variables {
 
     private final ComplexWrapper root;
+    private final ChangeListeners listeners = new ChangeListeners();
 
     public SimpleVariables() {
         this.root = new ComplexWrapper();
@@ -39,6 +40,18 @@ public class SimpleVariables implements Variables {
         return root.isEmpty();
     }
 
+    /**
+     * register a listener called after the variables are changed
+     *
+     * @param listener the listener, weakly referenced
+     * @return true
+     */
+    @Override
+    public boolean addChangeListener(Runnable listener) {
+        listeners.add(listener);
+        return true;
+    }
+
     /**
      * check if the variable with given name is hidden by this variable table,
      * a variable is hidden only if there is a variable with the same name or its parent name
@@ -165,6 +178,7 @@ public class SimpleVariables implements Variables {
     @Override
     public <T> void put(@Nonnull Variable<T> variable) {
         createDir(variable.name()).put(variable);
+        listeners.fire();
     }
 
     /**
@@ -173,6 +187,7 @@ public class SimpleVariables implements Variables {
     @Override
     public void clear() {
         root.clear();
+        listeners.fire();
     }
 
     private ComplexWrapper createDir(@Nonnull VariableName name) {
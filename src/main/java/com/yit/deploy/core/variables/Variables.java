@@ -21,6 +21,16 @@ public interface Variables extends Merger<Variables> {
      */
     boolean isEmpty();
 
+    /**
+     * register a listener called after the variables are changed, so that data derived from them could be cached.
+     * the listener is weakly referenced, the caller should keep it as long as it is needed
+     * @param listener the listener
+     * @return false if changes are not tracked, and the listener is never called
+     */
+    default boolean addChangeListener(Runnable listener) {
+        return false;
+    }
+
     /**
      * check if the variable with given name is hidden by this variable table,
      * a variable is hidden only if there is a variable with the same name or its parent name
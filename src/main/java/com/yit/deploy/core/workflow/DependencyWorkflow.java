@@ -3,15 +3,17 @@ package com.yit.deploy.core.workflow;
 import com.yit.deploy.core.algorithm.Graph;
 import com.yit.deploy.core.exceptions.DependencyFailureException;
 import com.yit.deploy.core.exceptions.ExitException;
-import groovy.lang.Closure;
+import com.yit.deploy.core.exceptions.ParallelExecutionException;
 
 import java.io.Serializable;
-import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class DependencyWorkflow<T> implements Serializable {
     private final Graph<ExecutionStatus<T>, String> graph = new Graph<>();
+    private final int slots;
     private final Semaphore slotSem;
 
     public DependencyWorkflow() {
@@ -19,6 +21,7 @@ public class DependencyWorkflow<T> implements Serializable {
     }
 
     public DependencyWorkflow(int slots) {
+        this.slots = slots;
         this.slotSem = new Semaphore(slots, true);
     }
 
@@ -69,6 +72,129 @@ public class DependencyWorkflow<T> implements Serializable {
         }
     }
 
+    /**
+     * execute all works on a pool of workers, one per slot.
+     * only the works whose dependencies are all finished are dispatched to the workers,
+     * those on the longest remaining chain of dependencies first.
+     * once a work fails, the works depending on it are failed without being executed,
+     * while the others are still executed.
+     * it is an alternative to calling executeWork for each work in its own thread.
+     *
+     * @throws ParallelExecutionException if more than one work failed, a single failure is thrown as it is
+     */
+    public void execute() {
+        List<String> order = graph.topology();
+        if (order.isEmpty()) {
+            return;
+        }
+
+        // number of unfinished dependencies, and the number of works on the longest chain starting from the work
+        Map<String, Integer> inDegrees = new HashMap<>();
+        Map<String, Integer> criticalPaths = new HashMap<>();
+        for (int i = order.size() - 1; i >= 0; i--) {
+            String name = order.get(i);
+            inDegrees.put(name, graph.prev(name).size());
+            int length = 0;
+            for (String next : graph.next(name)) {
+                length = Math.max(length, criticalPaths.get(next));
+            }
+            criticalPaths.put(name, length + 1);
+        }
+
+        PriorityQueue<String> ready = new PriorityQueue<>(
+            Comparator.comparing((String name) -> criticalPaths.get(name)).reversed());
+        for (String name : order) {
+            if (inDegrees.get(name) == 0) {
+                ready.add(name);
+            }
+        }
+
+        BlockingQueue<Map.Entry<String, Throwable>> finished = new LinkedBlockingQueue<>();
+        Map<String, Throwable> errors = new LinkedHashMap<>();
+        ExecutorService workers = Executors.newFixedThreadPool(
+            Math.min(slots, order.size()),
+            createThreadFactory(Thread.currentThread().getContextClassLoader()));
+        try {
+            int running = 0, remaining = order.size();
+            while (remaining > 0) {
+                while (running < slots && !ready.isEmpty()) {
+                    String name = ready.poll();
+                    ExecutionStatus<T> status = graph.getAt(name);
+                    workers.execute(() -> finished.add(new AbstractMap.SimpleEntry<>(name, run(status))));
+                    running++;
+                }
+
+                Map.Entry<String, Throwable> result = finished.take();
+                running--;
+                remaining--;
+                if (result.getValue() != null) {
+                    errors.put(result.getKey(), result.getValue());
+                    // the dependents never become ready, since the failed work is never counted as finished
+                    remaining -= failDependents(result.getKey());
+                    continue;
+                }
+                for (String next : graph.next(result.getKey())) {
+                    int degree = inDegrees.get(next) - 1;
+                    inDegrees.put(next, degree);
+                    if (degree == 0) {
+                        ready.add(next);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new ExitException(e);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        ParallelExecutionException.throwIfFailed(errors);
+    }
+
+    private static <T> Throwable run(ExecutionStatus<T> status) {
+        try {
+            status.work.accept(status.data);
+            status.succeed();
+            return null;
+        } catch (Throwable e) {
+            // groovy closures may throw checked exceptions, which must be reported as well
+            status.fail();
+            return e;
+        }
+    }
+
+    /**
+     * mark all works depending on the failed work directly or indirectly as failed
+     *
+     * @return number of works marked
+     */
+    private int failDependents(String failed) {
+        int[] count = new int[1];
+        graph.travelForward(failed, step -> {
+            ExecutionStatus<T> status = step.node;
+            if (status == graph.getAt(failed)) {
+                return true;
+            }
+            if (status.isFinished()) {
+                return false;
+            }
+            status.fail();
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    private static ThreadFactory createThreadFactory(ClassLoader contextClassLoader) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, "dependency-workflow-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            // groovy closures of the works are loaded by the caller's class loader
+            t.setContextClassLoader(contextClassLoader);
+            return t;
+        };
+    }
+
     public List<String> topology() {
         return graph.topology();
     }
@@ -0,0 +1,95 @@
+package com.yit.deploy.core.test;
+
+import com.yit.deploy.core.exceptions.ExitException;
+import com.yit.deploy.core.exceptions.ParallelExecutionException;
+import com.yit.deploy.core.workflow.DependencyWorkflow;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class DependencyWorkflowTest {
+    @Test(timeout = 10000)
+    public void executeInOrder() {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        DependencyWorkflow<String> workflow = new DependencyWorkflow<>(2);
+        workflow.task("a", "a", executed::add);
+        workflow.task("b", "b", executed::add);
+        workflow.task("c", "c", executed::add);
+        workflow.depends("c", "a", "b");
+
+        workflow.execute();
+        Assert.assertEquals(3, executed.size());
+        Assert.assertEquals("c", executed.get(2));
+    }
+
+    @Test(timeout = 10000)
+    public void failDependents() {
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        IllegalStateException error = new IllegalStateException("a failed");
+        DependencyWorkflow<String> workflow = new DependencyWorkflow<>(2);
+        workflow.task("a", "a", fail(error));
+        workflow.task("b", "b", executed::add);
+        workflow.task("c", "c", executed::add);
+        workflow.depends("b", "a");
+
+        try {
+            workflow.execute();
+            Assert.fail("failure is not thrown");
+        } catch (IllegalStateException e) {
+            Assert.assertSame(error, e);
+        }
+        Assert.assertEquals(Collections.singletonList("c"), executed);
+    }
+
+    @Test(timeout = 10000)
+    public void reportAllFailures() {
+        DependencyWorkflow<String> workflow = new DependencyWorkflow<>(2);
+        workflow.task("a", "a", fail(new IllegalStateException("a failed")));
+        workflow.task("b", "b", fail(new IllegalStateException("b failed")));
+        workflow.task("c", "c", s -> {});
+        workflow.depends("c", "a");
+
+        try {
+            workflow.execute();
+            Assert.fail("failure is not thrown");
+        } catch (ParallelExecutionException e) {
+            Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), e.getBranchErrors().keySet());
+            Assert.assertEquals(1, e.getSuppressed().length);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void wrapCheckedException() {
+        IOException error = new IOException("checked");
+        DependencyWorkflow<String> workflow = new DependencyWorkflow<>(2);
+        workflow.task("a", "a", fail(error));
+        workflow.task("b", "b", s -> {});
+        workflow.depends("b", "a");
+
+        try {
+            workflow.execute();
+            Assert.fail("failure is not thrown");
+        } catch (ExitException e) {
+            Assert.fail("checked failure is thrown as an abort");
+        } catch (RuntimeException e) {
+            Assert.assertSame(RuntimeException.class, e.getClass());
+            Assert.assertSame(error, e.getCause());
+            Assert.assertFalse(ExitException.belongsTo(e));
+        }
+    }
+
+    /**
+     * throw the exception even if it is checked, like a groovy closure does
+     */
+    private static Consumer<String> fail(Throwable t) {
+        return s -> DependencyWorkflowTest.<RuntimeException>sneakyThrow(t);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> void sneakyThrow(Throwable t) throws T {
+        throw (T) t;
+    }
+}
@@ -0,0 +1,53 @@
+package com.yit.deploy.core.test;
+
+import com.yit.deploy.core.algorithm.Graph;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class GraphTest {
+    @Test
+    public void levels() {
+        Graph<String, Object> graph = new Graph<>();
+        graph.arc("a", "b").arc("a", "c").arc("b", "d").arc("c", "d").node("e", "e");
+
+        List<List<String>> levels = graph.levels();
+        Assert.assertEquals(Arrays.asList(
+            Arrays.asList("a", "e"),
+            Arrays.asList("b", "c"),
+            Arrays.asList("d")), levels);
+    }
+
+    @Test
+    public void levelsOfEmptyGraph() {
+        Assert.assertTrue(new Graph<String, Object>().levels().isEmpty());
+    }
+
+    @Test
+    public void levelsWithCycle() {
+        Graph<String, Object> graph = new Graph<>();
+        graph.arc("a", "b").arc("b", "c").arc("c", "a").arc("d", "a");
+
+        try {
+            graph.levels();
+            Assert.fail("cycle is not found");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("circle find in graph b -> c -> a -> b", e.getMessage());
+        }
+    }
+
+    @Test
+    public void levelsWithSelfLoop() {
+        Graph<String, Object> graph = new Graph<>();
+        graph.arc("a", "b").arc("b", "b");
+
+        try {
+            graph.levels();
+            Assert.fail("cycle is not found");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("circle find in graph b -> b", e.getMessage());
+        }
+    }
+}
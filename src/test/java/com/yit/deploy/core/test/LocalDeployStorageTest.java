@@ -0,0 +1,123 @@
+package com.yit.deploy.core.test;
+
+import com.yit.deploy.core.records.BuildRecord;
+import com.yit.deploy.core.records.CountMode;
+import com.yit.deploy.core.records.KeysetPage;
+import com.yit.deploy.core.storage.LocalDeployStorage;
+import com.yit.deploy.core.storage.StorageConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class LocalDeployStorageTest {
+    @Test
+    public void queryBuildsByKeyset() {
+        LocalDeployStorage storage = new LocalDeployStorage(new StorageConfig());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(addBuild(storage, "job-a", "env-1", "project-a"));
+            addBuild(storage, "job-b", "env-1", "project-b");
+        }
+        Collections.reverse(ids);
+
+        KeysetPage<BuildRecord> page = storage.queryBuilds(null, 2, "job-a", null, null, null, null, null, CountMode.exact);
+        Assert.assertEquals(ids.subList(0, 2), getIds(page));
+        Assert.assertEquals(ids.get(1), page.getNextId());
+        Assert.assertEquals(5, page.getTotalCount());
+        Assert.assertTrue(page.isCountExact());
+
+        page = storage.queryBuilds(page.getNextId(), 2, "job-a", null, null, null, null, null, CountMode.none);
+        Assert.assertEquals(ids.subList(2, 4), getIds(page));
+        Assert.assertEquals(-1, page.getTotalCount());
+        Assert.assertFalse(page.isCountExact());
+
+        page = storage.queryBuilds(page.getNextId(), 2, "job-a", null, null, null, null, null, CountMode.none);
+        Assert.assertEquals(ids.subList(4, 5), getIds(page));
+        Assert.assertNull(page.getNextId());
+
+        // a full page at the end has no next page
+        page = storage.queryBuilds(null, 5, "job-a", null, null, null, null, null, CountMode.none);
+        Assert.assertEquals(ids, getIds(page));
+        Assert.assertNull(page.getNextId());
+    }
+
+    @Test
+    public void queryBuildsByIndexes() {
+        LocalDeployStorage storage = new LocalDeployStorage(new StorageConfig());
+        long a1 = addBuild(storage, "job-a", "env-1", "project-a");
+        long b1 = addBuild(storage, "job-b", "env-1", "project-b");
+        long a2 = addBuild(storage, "job-c", "env-2", "project-a");
+        long a3 = addBuild(storage, "job-a", "env-1", "project-a");
+
+        Assert.assertEquals(Arrays.asList(b1, a1), queryIds(storage, null, "env-1", "project-b", null, null, null, true));
+        Assert.assertEquals(Arrays.asList(a3, b1, a1), queryIds(storage, null, "env-1", null, null, null, null, false));
+        Assert.assertEquals(Arrays.asList(a3, a2, a1), queryIds(storage, null, null, "project-a", null, null, null, false));
+        Assert.assertEquals(Collections.emptyList(), queryIds(storage, "job-x", null, null, null, null, null, false));
+
+        finishBuild(storage, a1, true, "compile");
+        finishBuild(storage, a2, false, null);
+        Assert.assertEquals(Arrays.asList(a2, a1), queryIds(storage, null, null, "project-a", true, null, null, false));
+        Assert.assertEquals(Collections.singletonList(a3), queryIds(storage, "job-a", null, null, false, null, null, false));
+        Assert.assertEquals(Collections.singletonList(a1), queryIds(storage, null, null, null, null, true, "compile", false));
+
+        Assert.assertEquals(a1, storage.getJobLastBuild("job-a").getId());
+        Assert.assertNull(storage.getJobLastBuild("job-b"));
+        Assert.assertNull(storage.getJobLastBuild("job-x"));
+    }
+
+    @Test
+    public void configsByKey() {
+        LocalDeployStorage storage = new LocalDeployStorage(new StorageConfig());
+        storage.updateConfigValue("env-1", "project-a", "ns", "key", "locker", old -> old == null ? "1" : old + "1");
+        storage.updateConfigValue("env-1", "project-a", "ns", "key", "locker", old -> old == null ? "1" : old + "1");
+        storage.updateConfigValue(null, null, "ns", "key", "locker", old -> "global");
+
+        Assert.assertEquals("11", storage.getConfigValue("env-1", "project-a", "ns", "key", "locker"));
+        Assert.assertEquals("global", storage.getConfigValue(null, null, "ns", "key", "locker"));
+        Assert.assertNull(storage.getConfigValue("env-2", "project-a", "ns", "key", "locker"));
+    }
+
+    /**
+     * query the ids of all matched builds, one build per page if paging
+     */
+    private static List<Long> queryIds(LocalDeployStorage storage, String jobName, String envName, String projectName,
+                                       Boolean finished, Boolean failed, String failedType, boolean paging) {
+        List<Long> ids = new ArrayList<>();
+        Long lastSeenId = null;
+        do {
+            KeysetPage<BuildRecord> page = storage.queryBuilds(lastSeenId, paging ? 1 : 100,
+                jobName, envName, projectName, finished, failed, failedType, CountMode.none);
+            ids.addAll(getIds(page));
+            lastSeenId = page.getNextId();
+        } while (lastSeenId != null);
+        return ids;
+    }
+
+    private static List<Long> getIds(KeysetPage<BuildRecord> page) {
+        List<Long> ids = new ArrayList<>();
+        for (BuildRecord record : page.getData()) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+
+    private static long addBuild(LocalDeployStorage storage, String jobName, String envName, String projectName) {
+        BuildRecord record = new BuildRecord();
+        record.setJobName(jobName);
+        record.setEnvName(envName);
+        record.setProjectName(projectName);
+        record.setStartedTime(new Date());
+        storage.addBuild(record);
+        return record.getId();
+    }
+
+    private static void finishBuild(LocalDeployStorage storage, long id, boolean failed, String failedType) {
+        BuildRecord record = new BuildRecord();
+        record.setId(id);
+        record.setFinishedTime(new Date());
+        record.setFailed(failed);
+        record.setFailedType(failedType);
+        storage.finishBuild(record);
+    }
+}
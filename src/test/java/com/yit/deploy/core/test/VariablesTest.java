@@ -3,6 +3,8 @@ package com.yit.deploy.core.test;
 import com.yit.deploy.core.function.Closures;
 import com.yit.deploy.core.function.Lambda;
 import com.yit.deploy.core.function.ClosureWrapper;
+import com.yit.deploy.core.model.VariableName;
+import com.yit.deploy.core.variables.LayeredVariables;
 import com.yit.deploy.core.variables.SimpleVariables;
 import com.yit.deploy.core.variables.resolvers.SimpleVariableResolver;
 import com.yit.deploy.core.variables.variable.*;
@@ -136,4 +138,92 @@ public class VariablesTest {
         resolver.setVariable("a", new CachedVariable<>(new LazyVariable<>(new ClosureWrapper<>(Closures.closure(null, () -> new Random().nextInt())))));
         Assert.assertEquals(resolver.getVariable("a"), resolver.getVariable("a"));
     }
+
+    @Test
+    public void parseVariableName() {
+        String[] names = {"", "a", "a.b.c", ".", "..", ".a", "a.", "a..", "a..b", "..a.b", "a.b.", "a.*"};
+        for (String name : names) {
+            Assert.assertArrayEquals(name, name.split("\\."), VariableName.parse(name).path);
+        }
+        Assert.assertEquals("a.b.c", VariableName.parse("a.b.c").toString());
+        Assert.assertEquals(VariableName.parse("a..b"), new VariableName(new String[]{"a", "", "b"}));
+    }
+
+    @Test
+    public void internVariableName() {
+        VariableName a = VariableName.parse("a");
+        Assert.assertSame(a, VariableName.parse("a"));
+        Assert.assertSame(a, VariableName.of(new String[]{"a"}));
+        Assert.assertSame(VariableName.parse("a.b"), a.field("b"));
+        Assert.assertSame(a.field("b"), a.field("b"));
+        Assert.assertSame(VariableName.parse("a.*"), a.toRepeatable());
+        Assert.assertSame(a.toRepeatable(), a.toRepeatable());
+        Assert.assertTrue(a.toRepeatable().repeatable());
+    }
+
+    @Test
+    public void compiledLayeredVariables() {
+        SimpleVariables bottom = new SimpleVariables();
+        SimpleVariables top = new SimpleVariables();
+        LayeredVariables layered = new LayeredVariables().layer(bottom, top);
+
+        Variable<Object> a1 = var("a", 1);
+        bottom.put(a1);
+        Assert.assertSame(a1, layered.get("a"));
+        Assert.assertNull(layered.get("b"));
+
+        // put on a layer directly
+        Variable<Object> a2 = var("a", 2);
+        top.put(a2);
+        Assert.assertSame(a2, layered.get("a"));
+        Variable<Object> b = var("b", 3);
+        bottom.put(b);
+        Assert.assertSame(b, layered.get("b"));
+        Assert.assertEquals(2, Lambda.asList(layered.variables()).size());
+
+        // nested layered tables are invalidated by the changes of their inner layers
+        LayeredVariables outer = new LayeredVariables().layer(layered);
+        Assert.assertSame(a2, outer.get("a"));
+        top.clear();
+        Assert.assertSame(a1, layered.get("a"));
+        Assert.assertSame(a1, outer.get("a"));
+
+        // add a layer
+        SimpleVariables extra = new SimpleVariables();
+        Variable<Object> a3 = var("a", 4);
+        extra.put(a3);
+        layered.layer(extra);
+        Assert.assertSame(a3, layered.get("a"));
+        Assert.assertSame(a3, outer.get("a"));
+
+        // replace the layers
+        layered.clearLayers();
+        Assert.assertNull(layered.get("a"));
+        Assert.assertNull(outer.get("b"));
+        Assert.assertFalse(layered.variables().hasNext());
+
+        // removed layers do not affect the table any more
+        bottom.put(var("c", 5));
+        Assert.assertNull(layered.get("c"));
+    }
+
+    @Test
+    public void compiledLayeredFields() {
+        SimpleVariables bottom = new SimpleVariables();
+        SimpleVariables top = new SimpleVariables();
+        LayeredVariables layered = new LayeredVariables().layer(bottom, top);
+
+        bottom.put(var("m.x", 1));
+        Assert.assertEquals(1, Lambda.asList(layered.fields(VariableName.parse("m"))).size());
+
+        top.put(var("m.y", 2));
+        Assert.assertEquals(2, Lambda.asList(layered.fields(VariableName.parse("m"))).size());
+
+        top.clear();
+        Assert.assertEquals(1, Lambda.asList(layered.fields(VariableName.parse("m"))).size());
+    }
+
+    private static Variable<Object> var(String name, Object value) {
+        return new SimpleVariable<>(value, VariableName.parse(name), null);
+    }
 }